@@ -36,6 +36,7 @@ android {
     dependencies {
         coreLibraryDesugaring("com.android.tools:desugar_jdk_libs:2.1.2")
         implementation("com.google.android.material:material:1.12.0")
+        testImplementation("junit:junit:4.13.2")
     }
     dependenciesInfo {
         // Disables dependency metadata when building APKs.
@@ -0,0 +1,178 @@
+package com.abdurazaaqmohammed.AntiSplit.main;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+
+import com.j256.simplezip.ZipFileInput;
+import com.j256.simplezip.format.ZipFileHeader;
+import com.reandroid.archive.ArchiveEntry;
+import com.reandroid.archive.ArchiveFile;
+import com.starry.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Split apk names of a bundle (apks, xapk, apkm ...) read once from its central directory, or by
+ * streaming if the uri is not readable as a file. The opened bundle is kept so split selection
+ * and merger share a single read of the input, only the last indexed uri is cached until
+ * {@link #clear()}. The cache is re-created if length or last modified time of the uri changed.
+ */
+public class BundleIndex implements Closeable {
+
+    private static final String COPY_NAME = "bundle-index.tmp";
+    private static BundleIndex cached;
+
+    private final Uri uri;
+    private final List<String> splits;
+    private final long[] stat;
+    private ArchiveFile archive;
+    private File copy;
+    private boolean notZipFile;
+
+    private BundleIndex(Uri uri, ArchiveFile archive, List<String> splits, long[] stat) {
+        this.uri = uri;
+        this.archive = archive;
+        this.splits = Collections.unmodifiableList(splits);
+        this.stat = stat;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * A bundle listed by streaming is copied to cache dir here, only when its data is needed.
+     * The archive keeps its channel open so it can still be read after the cache dir is cleaned.
+     * @return opened bundle, or null if it can not be opened as a zip file
+     */
+    public synchronized ArchiveFile getArchive(Context context) throws IOException {
+        if (archive != null || notZipFile) return archive;
+        File copy = new File(context.getCacheDir(), COPY_NAME);
+        try (InputStream is = context.getContentResolver().openInputStream(uri)) {
+            FileUtils.copyFile(is, copy);
+        }
+        try {
+            archive = new ArchiveFile(copy);
+            this.copy = copy;
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            copy.delete();
+            notZipFile = true;
+        }
+        return archive;
+    }
+
+    public List<String> getSplits() {
+        return splits;
+    }
+
+    /** @noinspection ResultOfMethodCallIgnored*/
+    @Override
+    public synchronized void close() throws IOException {
+        if (archive != null) archive.close();
+        if (copy != null) copy.delete();
+        archive = null;
+        copy = null;
+    }
+
+    public static synchronized BundleIndex get(Uri uri, Context context) throws IOException {
+        BundleIndex index = cached;
+        if (index != null && index.uri.equals(uri) && index.isCurrent(context)) return index;
+        clear();
+        return cached = create(uri, context);
+    }
+
+    private boolean isCurrent(Context context) {
+        long[] current = stat(uri, context);
+        // Nothing to compare against, better read again than use a stale index
+        if (current[0] == -1 && current[1] == -1) return false;
+        return current[0] == stat[0] && current[1] == stat[1];
+    }
+
+    public static synchronized void clear() {
+        BundleIndex index = cached;
+        cached = null;
+        if (index != null) try {
+            index.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static BundleIndex create(Uri uri, Context context) throws IOException {
+        long[] stat = stat(uri, context);
+        File file = getReadableFile(uri, context);
+        if (file == null) {
+            // Not accessible as a file, listing names does not need a copy
+            return new BundleIndex(uri, null, listByStream(uri, context), stat);
+        }
+        ArchiveFile archive;
+        try {
+            archive = new ArchiveFile(file);
+        } catch (IOException e) {
+            BundleIndex index = new BundleIndex(uri, null, listByStream(uri, context), stat);
+            index.notZipFile = true;
+            return index;
+        }
+        List<String> splits = new ArrayList<>();
+        Iterator<ArchiveEntry> iterator = archive.getFiles();
+        while (iterator.hasNext()) {
+            String name = iterator.next().getName();
+            if (name.endsWith(".apk")) splits.add(name);
+        }
+        return new BundleIndex(uri, archive, splits, stat);
+    }
+
+    /**
+     * @return length and last modified time of the uri, -1 for values the provider does not report
+     */
+    private static long[] stat(Uri uri, Context context) {
+        File file = getReadableFile(uri, context);
+        if (file != null) return new long[]{file.length(), file.lastModified()};
+        long[] result = {-1, -1};
+        try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int i = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (i != -1 && !cursor.isNull(i)) result[0] = cursor.getLong(i);
+                i = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                if (i != -1 && !cursor.isNull(i)) result[1] = cursor.getLong(i);
+            }
+        } catch (Exception ignored) {
+        }
+        return result;
+    }
+
+    private static List<String> listByStream(Uri uri, Context context) throws IOException {
+        List<String> splits = new ArrayList<>();
+        try (InputStream is = FileUtils.getInputStream(uri, context);
+             ZipFileInput zis = new ZipFileInput(is)) {
+            ZipFileHeader header;
+            while ((header = zis.readFileHeader()) != null) {
+                final String name = header.getFileName();
+                if (name.endsWith(".apk")) splits.add(name);
+            }
+        }
+        return splits;
+    }
+
+    private static File getReadableFile(Uri uri, Context context) {
+        try {
+            String path = FileUtils.getPath(uri, context);
+            if (TextUtils.isEmpty(path)) return null;
+            File file = new File(path);
+            return file.canRead() ? file : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
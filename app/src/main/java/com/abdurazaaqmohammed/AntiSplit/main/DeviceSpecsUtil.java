@@ -6,16 +6,8 @@ import android.os.Build;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
 
-import com.j256.simplezip.ZipFileInput;
-import com.j256.simplezip.format.ZipFileHeader;
-import com.reandroid.archive.ArchiveFile;
-import com.reandroid.archive.InputSource;
-import com.reandroid.archive.ZipEntryMap;
-import com.starry.FileUtils;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -26,7 +18,6 @@ public class DeviceSpecsUtil {
     private final Context context;
     public final String lang;
     private final String densityType;
-    public static ArchiveFile zipFile = null;
 
     public DeviceSpecsUtil(Context context) {
         this.context = context;
@@ -35,32 +26,8 @@ public class DeviceSpecsUtil {
     }
 
     public List<String> getListOfSplits(Uri splitAPKUri) throws IOException {
-        List<String> splits = new ArrayList<>();
-
-        try (InputStream is = FileUtils.getInputStream(splitAPKUri, context);
-                ZipFileInput zis = new ZipFileInput(is)) {
-            ZipFileHeader header;
-            while ((header = zis.readFileHeader()) != null) {
-                final String name = header.getFileName();
-                if (name.endsWith(".apk")) splits.add(name);
-            }
-        }
-
-        if(splits.size() < 2) {
-            File file = new File(FileUtils.getPath(splitAPKUri, context));
-            boolean couldNotRead = !file.canRead();
-            try(InputStream is = context.getContentResolver().openInputStream(splitAPKUri)) {
-                if(couldNotRead) FileUtils.copyFile(is, file = new File(context.getCacheDir(), file.getName()));
-            }
-            ZipEntryMap entries = (zipFile = new ArchiveFile(file)).createZipEntryMap();
-            // Do not close this ZipFile it could be used later in merger
-            for(InputSource inputSource : entries.toArray()) {
-                String name = inputSource.getName();
-                if (name.endsWith(".apk"))  splits.add(name);
-            }
-        }
-
-        return splits;
+        // The index is kept open and reused by the merger
+        return new ArrayList<>(BundleIndex.get(splitAPKUri, context).getSplits());
     }
 
     public static boolean isArch(String thisSplit) {
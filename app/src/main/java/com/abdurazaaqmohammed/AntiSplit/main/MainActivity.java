@@ -75,6 +75,7 @@ import com.google.android.material.textview.MaterialTextView;
 import com.reandroid.apk.ApkBundle;
 import com.reandroid.apkeditor.merge.LogUtil;
 import com.reandroid.apkeditor.merge.Merger;
+import com.reandroid.apkeditor.merge.MergerOptions;
 import com.starry.FileUtils;
 
 import java.io.BufferedReader;
@@ -100,6 +101,9 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
     private static boolean ask = true;
     private static boolean showDialog;
     private static boolean signApk;
+    private static boolean mergeCache;
+    private static boolean lowMemory;
+    private static boolean smallestApk;
     private static boolean selectSplitsForDevice;
     private Uri splitAPKUri;
     private ArrayList<Uri> uris;
@@ -157,6 +161,9 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
         // Fetch settings from SharedPreferences
         if(checkForUpdates = settings.getBoolean("checkForUpdates", true)) new CheckForUpdatesTask(this, false).execute();
         signApk = settings.getBoolean("signApk", true);
+        mergeCache = settings.getBoolean("mergeCache", false);
+        lowMemory = settings.getBoolean("lowMemory", false);
+        smallestApk = settings.getBoolean("smallestApk", false);
         showDialog = settings.getBoolean("showDialog", false);
         selectSplitsForDevice = settings.getBoolean("selectSplitsForDevice", false);
         logEnabled = settings.getBoolean("logEnabled", true);
@@ -265,6 +272,9 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
             ((TextView) settingsDialog.findViewById(R.id.ask)).setText(rss.getString(R.string.ask));
             ((TextView) settingsDialog.findViewById(R.id.showDialogToggle)).setText(rss.getString(R.string.show_dialog));
             ((TextView) settingsDialog.findViewById(R.id.signToggle)).setText(rss.getString(R.string.sign_apk));
+            ((TextView) settingsDialog.findViewById(R.id.mergeCacheToggle)).setText(rss.getString(R.string.merge_cache));
+            ((TextView) settingsDialog.findViewById(R.id.lowMemoryToggle)).setText(rss.getString(R.string.low_memory_merge));
+            ((TextView) settingsDialog.findViewById(R.id.smallestApkToggle)).setText(rss.getString(R.string.smallest_apk));
             ((TextView) settingsDialog.findViewById(R.id.selectSplitsForDeviceToggle)).setText(rss.getString(R.string.automatically_select));
             ((TextView) settingsDialog.findViewById(R.id.updateToggle)).setText(rss.getString(R.string.auto_update));
             ((TextView) settingsDialog.findViewById(R.id.checkUpdateNow)).setText(rss.getString(R.string.check_update_now));
@@ -334,6 +344,22 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
             signToggle.setChecked(signApk);
             signToggle.setOnCheckedChangeListener((buttonView, isChecked) -> signApk = isChecked);
 
+            CompoundButton mergeCacheToggle = settingsDialog.findViewById(R.id.mergeCacheToggle);
+            mergeCacheToggle.setChecked(mergeCache);
+            mergeCacheToggle.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                File mergeCacheDir = new File(getFilesDir(), "merge-cache");
+                // Cached table of a previous merge is useless once disabled
+                if(!(mergeCache = isChecked) && mergeCacheDir.isDirectory()) deleteDir(mergeCacheDir);
+            });
+
+            CompoundButton lowMemoryToggle = settingsDialog.findViewById(R.id.lowMemoryToggle);
+            lowMemoryToggle.setChecked(lowMemory);
+            lowMemoryToggle.setOnCheckedChangeListener((buttonView, isChecked) -> lowMemory = isChecked);
+
+            CompoundButton smallestApkToggle = settingsDialog.findViewById(R.id.smallestApkToggle);
+            smallestApkToggle.setChecked(smallestApk);
+            smallestApkToggle.setOnCheckedChangeListener((buttonView, isChecked) -> smallestApk = isChecked);
+
             CompoundButton selectSplitsAutomaticallySwitch = settingsDialog.findViewById(R.id.selectSplitsForDeviceToggle);
             CompoundButton showDialogSwitch = settingsDialog.findViewById(R.id.showDialogToggle);
 
@@ -461,6 +487,9 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
             ((TextView) settingsDialog.findViewById(R.id.ask)).setText(res.getString(R.string.ask));
             ((TextView) settingsDialog.findViewById(R.id.showDialogToggle)).setText(res.getString(R.string.show_dialog));
             ((TextView) settingsDialog.findViewById(R.id.signToggle)).setText(res.getString(R.string.sign_apk));
+            ((TextView) settingsDialog.findViewById(R.id.mergeCacheToggle)).setText(res.getString(R.string.merge_cache));
+            ((TextView) settingsDialog.findViewById(R.id.lowMemoryToggle)).setText(res.getString(R.string.low_memory_merge));
+            ((TextView) settingsDialog.findViewById(R.id.smallestApkToggle)).setText(res.getString(R.string.smallest_apk));
             ((TextView) settingsDialog.findViewById(R.id.selectSplitsForDeviceToggle)).setText(res.getString(R.string.automatically_select));
             ((TextView) settingsDialog.findViewById(R.id.updateToggle)).setText(res.getString(R.string.auto_update));
             ((TextView) settingsDialog.findViewById(R.id.checkUpdateNow)).setText(res.getString(R.string.check_update_now));
@@ -495,6 +524,9 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
                 .putBoolean("ask", ask)
                 .putBoolean("showDialog", showDialog)
                 .putBoolean("signApk", signApk)
+                .putBoolean("mergeCache", mergeCache)
+                .putBoolean("lowMemory", lowMemory)
+                .putBoolean("smallestApk", smallestApk)
                 .putBoolean("systemTheme", systemTheme)
                 .putBoolean("selectSplitsForDevice", selectSplitsForDevice)
                 .putInt("theme", theme)
@@ -546,6 +578,7 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
 
     @Override
     protected void onDestroy() {
+        BundleIndex.clear();
         deleteDir(getCacheDir());
         cleanupAppFolder();
         super.onDestroy();
@@ -572,6 +605,14 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
 
             final File cacheDir = activity.getCacheDir();
             if (cacheDir != null && activity.urisAreSplitApks) deleteDir(cacheDir);
+            MergerOptions mergerOptions = new MergerOptions();
+            // Thread count only changes speed, merged apk is the same
+            mergerOptions.jobs = Runtime.getRuntime().availableProcessors();
+            // Kept in files dir, cache dir is cleared before every merge
+            if (mergeCache) mergerOptions.mergeCacheDir = new File(activity.getFilesDir(), "merge-cache");
+            // Half of the heap, the rest is left for merging files and writing
+            if (lowMemory) mergerOptions.memoryBudget = (int) (Runtime.getRuntime().maxMemory() / (2 * 1024 * 1024));
+            if (smallestApk) mergerOptions.compression = MergerOptions.COMPRESSION_SMALLEST;
             try {
                 if(TextUtils.isEmpty(packageNameFromAppList)) {
                     List<String> splits = activity.splitsToUse;
@@ -646,13 +687,17 @@ public class MainActivity extends AppCompatActivity implements Merger.LogListene
                         uris[0],
                         activity,
                         splits,
-                        signApk);
+                        signApk,
+                        mergerOptions);
                 } else try(ApkBundle bundle = new ApkBundle()) {
                     bundle.loadApkDirectory(new File(activity.getPackageManager().getPackageInfo(packageNameFromAppList, 0).applicationInfo.sourceDir).getParentFile(), false, activity);
-                    Merger.run(bundle, cacheDir, uris[0], activity, signApk);
+                    Merger.run(bundle, cacheDir, uris[0], activity, signApk, mergerOptions);
                 }
             } catch (Exception e) {
                 activity.showError(e);
+            } finally {
+                // Do not keep the bundle open, nor a copy of it, after processing
+                BundleIndex.clear();
             }
             return null;
         }
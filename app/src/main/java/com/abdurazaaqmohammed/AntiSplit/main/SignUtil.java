@@ -8,7 +8,9 @@ import com.abdurazaaqmohammed.AntiSplit.R;
 import com.aefyr.pseudoapksigner.IOUtils;
 import com.aefyr.pseudoapksigner.PseudoApkSigner;
 import com.android.apksig.ApkSigner;
+import com.android.apksig.DefaultApkSignerEngine;
 import com.android.apksig.apk.ApkFormatException;
+import com.reandroid.apk.ApkModule;
 import com.reandroid.apkeditor.merge.LogUtil;
 import com.starry.FileUtils;
 
@@ -32,17 +34,22 @@ public class SignUtil {
         signApk(key, password, inputApk, output, true, true, true);
     }
 
-    public static void signApk(InputStream key, String password, File inputApk, File output, boolean v1, boolean v2, boolean v3) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, ApkFormatException, SignatureException, InvalidKeyException, UnrecoverableEntryException {
+    private static KeyStore.PrivateKeyEntry loadKey(InputStream key, String password) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, UnrecoverableEntryException {
         char[] pw = password.toCharArray();
 
         KeyStore keystore = KeyStore.getInstance("BKS");
         keystore.load(key, pw);
 
         String alias = keystore.aliases().nextElement();
+        return (KeyStore.PrivateKeyEntry) keystore.getEntry(alias, new KeyStore.PasswordProtection(pw));
+    }
+
+    public static void signApk(InputStream key, String password, File inputApk, File output, boolean v1, boolean v2, boolean v3) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, ApkFormatException, SignatureException, InvalidKeyException, UnrecoverableEntryException {
+        KeyStore.PrivateKeyEntry entry = loadKey(key, password);
 
         new ApkSigner.Builder(Collections.singletonList(new ApkSigner.SignerConfig.Builder("CERT",
-                ((KeyStore.PrivateKeyEntry) keystore.getEntry(alias, new KeyStore.PasswordProtection(pw))).getPrivateKey(),
-                Collections.singletonList((X509Certificate) keystore.getCertificate(alias))).build()))
+                entry.getPrivateKey(),
+                Collections.singletonList((X509Certificate) entry.getCertificate())).build()))
                 .setInputApk(inputApk)
                 .setOutputApk(output)
                 .setCreatedBy("Android Gradle 8.0.2")
@@ -59,6 +66,29 @@ public class SignUtil {
         signDebugKey(c, inputApk, output, true, true, true);
     }
 
+    public static DefaultApkSignerEngine createSignerEngine(InputStream key, String password, int minSdkVersion, boolean v1, boolean v2, boolean v3) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, UnrecoverableEntryException, InvalidKeyException {
+        KeyStore.PrivateKeyEntry entry = loadKey(key, password);
+
+        return new DefaultApkSignerEngine.Builder(Collections.singletonList(new DefaultApkSignerEngine.SignerConfig.Builder("CERT",
+                entry.getPrivateKey(),
+                Collections.singletonList((X509Certificate) entry.getCertificate())).build()), minSdkVersion)
+                .setCreatedBy("Android Gradle 8.0.2")
+                .setV1SigningEnabled(v1)
+                .setV2SigningEnabled(v2)
+                .setV3SigningEnabled(v3).build();
+    }
+
+    /**
+     * Writes the module signed with debug key in a single pass, no unsigned temp apk is written
+     */
+    public static void writeSignedDebugKey(Context c, ApkModule module, File output) throws IOException, UnrecoverableEntryException, CertificateException, KeyStoreException, NoSuchAlgorithmException, InvalidKeyException {
+        Integer minSdkVersion = module.hasAndroidManifest() ? module.getAndroidManifest().getMinSdkVersion() : null;
+        try (DefaultApkSignerEngine signerEngine = createSignerEngine(c.getAssets().open("debug23.keystore"), "android",
+                minSdkVersion == null ? 1 : minSdkVersion, true, true, true)) {
+            module.writeSignedApk(output, signerEngine);
+        }
+    }
+
     public static void signPseudoApkSigner(File temp, Context context, Uri out, Exception e) throws IOException {
         String msg = com.abdurazaaqmohammed.AntiSplit.main.MainActivity.rss.getString(R.string.sign_failed);
         if(Build.VERSION.SDK_INT < 30) {
@@ -27,10 +27,17 @@ import com.abdurazaaqmohammed.AntiSplit.main.MainActivity;
 import com.abdurazaaqmohammed.AntiSplit.main.MismatchedSplitsException;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.reandroid.apkeditor.merge.LogUtil;
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.ArchiveEntry;
+import com.reandroid.archive.ArchiveFile;
+import com.reandroid.archive.FileInputSource;
+import com.reandroid.archive.InputSource;
 import com.reandroid.archive.ZipEntryMap;
 import com.reandroid.archive.block.ApkSignatureBlock;
+import com.reandroid.archive.io.ZipFileInput;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.utils.collection.ArrayCollection;
+import com.reandroid.utils.io.FileUtil;
 
 import java.io.Closeable;
 import java.io.File;
@@ -38,10 +45,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ApkBundle implements Closeable {
     private final Map<String, ApkModule> mModulesMap;
     private APKLogger apkLogger;
+    private int threadCount = 1;
+    private boolean streamTableMerge;
+    private long memoryBudget;
+    private MergeCache mergeCache;
     public ApkBundle(){
         this.mModulesMap=new HashMap<>();
     }
@@ -58,36 +71,178 @@ public class ApkBundle implements Closeable {
         result.setAPKLogger(apkLogger);
         result.setLoadDefaultFramework(false);
 
+        MergeCache mergeCache = getMergeCache();
+        if(mergeCache != null){
+            mergeCache.setAPKLogger(apkLogger);
+            mergeCache.load(moduleList);
+        }
+        boolean releaseMerged = getMemoryBudget() > 0;
+        boolean streamTable = isStreamTableMerge() || mergeCache != null
+                || exceedsMemoryBudget(moduleList);
         ApkModule base=getBaseModule();
         if(base == null){
-            base = getLargestTableModule();
+            base = getLargestTableModule(streamTable);
+        }
+        ExecutorService executor = null;
+        int threadCount = getThreadCount();
+        if(threadCount > 1){
+            executor = Executors.newFixedThreadPool(threadCount);
+        }
+        File cachedTable = null;
+        TableStreamMerger tableMerger = null;
+        if(mergeCache != null){
+            if(mergeCache.isUnchanged()){
+                logMessage("Modules unchanged, using cached table");
+                cachedTable = mergeCache.getTableFile();
+            }else {
+                tableMerger = mergeCache.createTableMerger(base, moduleList);
+            }
         }
-        result.merge(base, force);
+        boolean incremental = cachedTable != null || tableMerger != null;
+        if(tableMerger != null){
+            tableMerger.setAPKLogger(apkLogger);
+        }else if(streamTable && !incremental){
+            tableMerger = new TableStreamMerger();
+            tableMerger.setAPKLogger(apkLogger);
+            addTableSource(tableMerger, base);
+        }
+        boolean mergeTable = tableMerger == null && !incremental;
         ApkSignatureBlock signatureBlock = null;
-        for(ApkModule module:moduleList){
-            ApkSignatureBlock asb = module.getApkSignatureBlock();
-            if(module==base){
-                if(asb != null){
+        try {
+            result.merge(base, force, executor, mergeTable);
+            if(releaseMerged && base != null){
+                base.releaseLoadedBlocks();
+            }
+            for(ApkModule module:moduleList){
+                ApkSignatureBlock asb = module.getApkSignatureBlock();
+                if(module==base){
+                    if(asb != null){
+                        signatureBlock = asb;
+                    }
+                    continue;
+                }
+                if(signatureBlock == null){
                     signatureBlock = asb;
                 }
-                continue;
+                if(tableMerger != null && !incremental){
+                    addTableSource(tableMerger, module);
+                }
+                result.merge(module, force, executor, mergeTable);
+                if(releaseMerged){
+                    module.releaseLoadedBlocks();
+                }
             }
-            if(signatureBlock == null){
-                signatureBlock = asb;
+        } finally {
+            if(executor != null){
+                executor.shutdownNow();
             }
-            result.merge(module, force);
         }
 
         result.setApkSignatureBlock(signatureBlock);
+        int conflicts = result.getMergeConflicts().size();
+        if(conflicts != 0){
+            logMessage("Duplicate paths: " + conflicts + ", kept from first merged module");
+        }
 
-        if(result.hasTableBlock()){
+        if(tableMerger != null || cachedTable != null){
+            if(cachedTable != null || tableMerger.size() != 0){
+                File file = File.createTempFile("merged", ".arsc", FileUtil.getTempDir());
+                file.deleteOnExit();
+                if(cachedTable != null){
+                    new FileInputSource(cachedTable, TableBlock.FILE_NAME).write(file);
+                }else {
+                    tableMerger.write(file);
+                }
+                // Added through module, table loaded while merging (from base) is dropped
+                result.add(new FileInputSource(file, TableBlock.FILE_NAME));
+                // Merged module owns the temporary table
+                result.setCloseable(file::delete);
+            }
+        }else if(result.hasTableBlock()){
             TableBlock tableBlock=result.getTableBlock();
             tableBlock.sortPackages();
             tableBlock.refresh();
         }
+        // Only fully merged tables are cached, re-merging into a re-merged table would keep
+        // growing its string pools with values of replaced splits
+        if(mergeCache != null && !incremental){
+            mergeCache.save(base, result.getInputSource(TableBlock.FILE_NAME));
+        }
         result.getZipEntryMap().autoSortApkFiles();
         return result;
     }
+    private void addTableSource(TableStreamMerger tableMerger, ApkModule module){
+        if(module != null){
+            tableMerger.add(module.getInputSource(TableBlock.FILE_NAME));
+        }
+    }
+    private boolean exceedsMemoryBudget(List<ApkModule> moduleList) throws IOException {
+        long budget = getMemoryBudget();
+        if(budget <= 0){
+            return false;
+        }
+        long length = 0;
+        for(ApkModule module : moduleList){
+            InputSource inputSource = module.getInputSource(TableBlock.FILE_NAME);
+            if(inputSource != null){
+                length += inputSource.getLength();
+            }
+        }
+        if(length * TABLE_HEAP_FACTOR <= budget){
+            return false;
+        }
+        logMessage("Tables exceed memory budget, merging tables through temporary file");
+        return true;
+    }
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+    /**
+     * Approximate heap in bytes {@link #mergeModules(boolean)} is allowed to use, zero or
+     * negative means unlimited. When set, parsed table and manifest of each module are
+     * released as soon as it is merged (file entries are kept as input sources), and tables
+     * estimated to exceed the budget are merged by {@link TableStreamMerger} into a
+     * temporary file.
+     * */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    public MergeCache getMergeCache() {
+        return mergeCache;
+    }
+    /**
+     * If set, {@link #mergeModules(boolean)} re-uses the table merged previously with the
+     * same cache, only tables of changed splits are merged again. Tables are always merged
+     * by {@link TableStreamMerger} when a cache is set.
+     * */
+    public void setMergeCache(MergeCache mergeCache) {
+        this.mergeCache = mergeCache;
+    }
+    public boolean isStreamTableMerge() {
+        return streamTableMerge;
+    }
+    /**
+     * If enabled, resources.arsc of modules are merged by {@link TableStreamMerger} into
+     * a temporary file instead of loading all tables. Merged table is equivalent but
+     * not byte identical to the default merge. Disabled by default.
+     * */
+    public void setStreamTableMerge(boolean streamTableMerge) {
+        this.streamTableMerge = streamTableMerge;
+    }
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Number of threads used to merge resource types of the tables in {@link #mergeModules(boolean)},
+     * values less than 2 keeps everything on the calling thread. The merged table is identical
+     * regardless of thread count.
+     * */
+    public void setThreadCount(int threadCount) {
+        if(threadCount < 1){
+            threadCount = 1;
+        }
+        this.threadCount = threadCount;
+    }
     private String generateMergedModuleName(){
         Set<String> moduleNames=mModulesMap.keySet();
         String merged="merged";
@@ -99,15 +254,21 @@ public class ApkBundle implements Closeable {
         }
         return name;
     }
-    private ApkModule getLargestTableModule(){
+    private ApkModule getLargestTableModule(boolean streamTableMerge) throws IOException {
         ApkModule apkModule=null;
-        int chunkSize=0;
+        long chunkSize=0;
         for(ApkModule module:getApkModuleList()){
             if(!module.hasTableBlock()){
                 continue;
             }
-            TableBlock tableBlock=module.getTableBlock();
-            int size=tableBlock.getHeaderBlock().getChunkSize();
+            long size;
+            InputSource inputSource = module.getInputSource(TableBlock.FILE_NAME);
+            if(streamTableMerge && inputSource != null){
+                // Avoid loading tables just to compare sizes
+                size = inputSource.getLength();
+            }else {
+                size = module.getTableBlock().getHeaderBlock().getChunkSize();
+            }
             if(apkModule==null || size>chunkSize){
                 chunkSize=size;
                 apkModule=module;
@@ -149,51 +310,127 @@ public class ApkBundle implements Closeable {
         List<File> apkList = recursive ? ApkUtil.recursiveFiles(dir, ".apk") : ApkUtil.listFiles(dir, ".apk");
         if(apkList.isEmpty()) throw new FileNotFoundException("No '*.apk' files in directory: " + dir);
         LogUtil.logMessage("Found apk files: "+apkList.size());
-        int size = apkList.size();
-        int[] versionCodes = new int[size];
+        // Version codes are read by probing manifests, only the kept splits are fully loaded
+        Map<String, Integer> versionCodes = new LinkedHashMap<>();
+        for(File file : apkList) {
+            versionCodes.put(file.getName(), SplitProbe.get(file).getVersionCode());
+        }
+        List<String> discarded = new ArrayList<>();
+        filterMismatchedSplits(versionCodes, discarded, context);
+        for(String name : discarded) {
+            new File(dir, name).delete();
+        }
+        for(File file : apkList) {
+            if(!versionCodes.containsKey(file.getName())) continue;
+            LogUtil.logMessage("Loading: "+file.getName());
+            addModule(ApkModule.loadApkFile(file, ApkUtil.toModuleName(file)));
+        }
+    }
+    /**
+     * Loads inner apk files of split apk container (apks, xapk, apkm ...), stored entries
+     * are read in place from the container and only compressed entries are extracted to extractDir
+     * */
+    public void loadApkArchive(ArchiveFile container, File extractDir, Collection<String> excluded, Context context) throws IOException, MismatchedSplitsException, InterruptedException {
+        Map<String, ZipFileInput> inputMap = new LinkedHashMap<>();
+        Map<String, Integer> versionCodes = new LinkedHashMap<>();
+        File containerFile = container.getZipInput().getFile();
+        List<File> extracted = new ArrayList<>();
+        List<String> loaded = new ArrayList<>();
+        boolean finished = false;
+        try {
+            Iterator<ArchiveEntry> iterator = container.getFiles();
+            while (iterator.hasNext()) {
+                ArchiveEntry entry = iterator.next();
+                String name = entry.getName();
+                if(!name.endsWith(".apk")) {
+                    LogUtil.logMessage(rss.getString(R.string.skipping) + name + rss.getString(R.string.not_apk));
+                    continue;
+                }
+                if(excluded != null && excluded.contains(name)) {
+                    LogUtil.logMessage(rss.getString(R.string.skipping) + name + rss.getString(R.string.unselected));
+                    continue;
+                }
+                ZipFileInput zipInput = openInnerApk(container, entry, extractDir);
+                inputMap.put(name, zipInput);
+                if(!containerFile.equals(zipInput.getFile())) extracted.add(zipInput.getFile());
+                versionCodes.put(name, SplitProbe.probe(name, zipInput).getVersionCode());
+            }
+            if(inputMap.isEmpty()) throw new FileNotFoundException("No '*.apk' files in: " + container.getZipInput());
+            LogUtil.logMessage("Found apk files: "+inputMap.size());
+            List<String> discarded = new ArrayList<>();
+            filterMismatchedSplits(versionCodes, discarded, context);
+            for(String name : discarded) {
+                ZipFileInput zipInput = inputMap.remove(name);
+                zipInput.close();
+                if(!containerFile.equals(zipInput.getFile())) zipInput.getFile().delete();
+            }
+            for(String name : versionCodes.keySet()) {
+                LogUtil.logMessage("Loading: "+name);
+                ArchiveFile archive = new ArchiveFile(inputMap.get(name));
+                inputMap.remove(name);
+                ApkModule apkModule = ApkModule.loadApkArchive(archive, ApkUtil.toModuleName(new File(name)));
+                addModule(apkModule);
+                loaded.add(apkModule.getModuleName());
+            }
+            finished = true;
+        } finally {
+            for(ZipFileInput zipInput : inputMap.values()) zipInput.close();
+            // Leave nothing behind for a fallback to load: modules of this call and extracted apks
+            if(!finished) unloadArchive(loaded, extracted);
+        }
+    }
+    /** @noinspection ResultOfMethodCallIgnored*/
+    private void unloadArchive(List<String> loaded, List<File> extracted) throws IOException {
+        try {
+            for(String name : loaded) {
+                ApkModule apkModule = removeApkModule(name);
+                if(apkModule != null) apkModule.close();
+            }
+        } finally {
+            for(File file : extracted) file.delete();
+        }
+    }
+    private static ZipFileInput openInnerApk(ArchiveFile container, ArchiveEntry entry, File extractDir) throws IOException {
+        if(entry.getMethod() == Archive.STORED) return container.openStoredEntry(entry);
+        String name = entry.getName();
+        File file = new File(extractDir, name);
+        if(!file.getCanonicalPath().startsWith(extractDir.getCanonicalPath() + File.separator))
+            throw new IOException("Zip entry is outside of the target dir: " + name);
+        try {
+            container.extract(file, entry);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        LogUtil.logMessage("Extracted " + name);
+        return new ZipFileInput(file);
+    }
+    private void filterMismatchedSplits(Map<String, Integer> versionCodes, List<String> discarded, Context context) throws MismatchedSplitsException, InterruptedException {
         int base = -1;
-        for(int i = 0; i < size; i++){
-            File file = apkList.get(i);
-//            try(ArchiveFile archiveFile = new ArchiveFile(file)) {
-//                archiveFile.
-//            }
-//            try(ZipFile zf = new ZipFile(file);
-//                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-//                InputStream is = zf.getInputStream(zf.getEntry("AndroidManifest.xml"))) {
-//                byte[] buffer = new byte[1024];
-//                int bytesRead;
-//                while ((bytesRead = is.read(buffer)) != -1) byteArrayOutputStream.write(buffer, 0, bytesRead);
-//                versionCodes[i] = ApkUtils.getVersionCodeFromBinaryAndroidManifest(ByteBuffer.wrap(byteArrayOutputStream.toByteArray()));
-//                if(DeviceSpecsUtil.isBaseApk(file.getName())) base = versionCodes[i];
-//            } catch (Exception e) {
-//                versionCodes[i] = -1;
-//            }
-            String name = ApkUtil.toModuleName(file);
-            ApkModule module = ApkModule.loadApkFile(file, name);
-            versionCodes[i] = module.getVersionCode();
-            if(DeviceSpecsUtil.isBaseApk(file.getName())) base = versionCodes[i];
+        for(Map.Entry<String, Integer> entry : versionCodes.entrySet()) {
+            if(DeviceSpecsUtil.isBaseApk(entry.getKey())) base = entry.getValue();
         }
         if(base == -1) {
             // It is a valid usage to merge only some files and then merge that merged file with the base later.
-            base = versionCodes[0]; // Just set first file as base for checking.
+            base = versionCodes.values().iterator().next(); // Just set first file as base for checking.
         }
-        List<File> mismatchedDpis = new ArrayList<>();
+        List<String> mismatchedDpis = new ArrayList<>();
         StringBuilder mismatchedLangs = new StringBuilder();
-        for(int i = 0; i < size; i++) {
-            if(versionCodes[i] != base) {
-                File f = apkList.get(i);
-                String name = f.getName();
+        for(Map.Entry<String, Integer> entry : versionCodes.entrySet()) {
+            if(entry.getValue() != base) {
+                String name = entry.getKey();
                 LogUtil.logMessage(name + rss.getString(R.string.mismatch_base));
                 if(DeviceSpecsUtil.isArch(name)) throw new MismatchedSplitsException("Error: Key (the app will not run without it) split (" + name + ") has a mismatched version code.");
-                if(name.contains("dpi")) mismatchedDpis.add(f);
+                if(name.contains("dpi")) mismatchedDpis.add(name);
                 else mismatchedLangs.append(", ").append(name);
             }
         }
 
-        apkList.removeAll(mismatchedDpis);
+        versionCodes.keySet().removeAll(mismatchedDpis);
         boolean hasDpi = false;
-        for(File f : apkList) {
-            if(f.getName().contains("dpi")) {
+        for(String name : versionCodes.keySet()) {
+            if(name.contains("dpi")) {
                 hasDpi = true;
                 break;
             }
@@ -207,8 +444,8 @@ public class ApkBundle implements Closeable {
                     act.runOnUiThread(new MaterialAlertDialogBuilder(context).setTitle(rss.getString(R.string.warning)).setMessage(rss.getString(R.string.mismatch, s.replaceFirst(", ", "")))
                             .setPositiveButton("OK", (dialog, which) -> {
                                 for(String filename : s.split(", ")) {
-                                    File f = new File(dir, filename);
-                                    if(f.delete()) apkList.remove(f);
+                                    versionCodes.remove(filename);
+                                    discarded.add(filename);
                                 }
                                 latch.countDown();
                             }).setNegativeButton(rss.getString(R.string.cancel), (dialog, which) -> {
@@ -219,14 +456,6 @@ public class ApkBundle implements Closeable {
                             .create()::show));
             latch.await();
         }
-        load(apkList);
-    }
-
-    private void load(List<File> apkList) throws IOException {
-        for(File file : apkList) {
-            LogUtil.logMessage("Loading: "+file.getName());
-            addModule(ApkModule.loadApkFile(file, ApkUtil.toModuleName(file)));
-        }
     }
 
     public void addModule(ApkModule apkModule){
@@ -286,4 +515,7 @@ public class ApkBundle implements Closeable {
             apkLogger.logVerbose(msg);
         }
     }
+
+    // Rough heap used by a loaded table relative to its file size
+    private static final int TABLE_HEAP_FACTOR = 8;
 }
@@ -15,6 +15,7 @@
   */
 package com.reandroid.apk;
 
+import com.android.apksig.ApkSignerEngine;
 import com.reandroid.archive.*;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.archive.io.ArchiveFileEntrySource;
@@ -41,6 +42,7 @@ import com.reandroid.xml.XMLElement;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 
@@ -62,6 +64,10 @@ public class ApkModule implements ApkFile, Closeable {
     private final List<TableBlock> mExternalFrameworks;
 
     private final Map<Object, Object> mTagMaps;
+    private Map<String, String> mPathOwners;
+    private final Map<String, String> mMergeConflicts;
+    private int writerThreadCount = 1;
+    private CompressionPolicy compressionPolicy;
 
     public ApkModule(String moduleName, ZipEntryMap zipEntryMap){
         this.moduleName = moduleName;
@@ -71,6 +77,7 @@ public class ApkModule implements ApkFile, Closeable {
         this.mExternalFrameworks = new ArrayCollection<>();
         this.zipEntryMap.setModuleName(moduleName);
         this.mTagMaps = new HashMap<>();
+        this.mMergeConflicts = new LinkedHashMap<>();
     }
     public ApkModule(ZipEntryMap zipEntryMap){
         this("base", zipEntryMap);
@@ -478,6 +485,14 @@ public class ApkModule implements ApkFile, Closeable {
         writer.setWriteProgress(progress);
         writer.write();
     }
+    /**
+     * Writes and signs in one pass, the apk is not re-read and re-written by a separate signer
+     * */
+    public void writeSignedApk(File file, ApkSignerEngine signerEngine) throws IOException {
+        ApkFileWriter writer = createApkFileWriter(file);
+        writer.setSignerEngine(signerEngine);
+        writer.write();
+    }
     public byte[] writeApkBytes() throws IOException {
         ApkByteWriter writer = createApkByteWriter();
         writer.write();
@@ -510,6 +525,27 @@ public class ApkModule implements ApkFile, Closeable {
         writer.setApkSignatureBlock(getApkSignatureBlock());
         writer.setArchiveInfo(getZipEntryMap().getArchiveInfo());
         writer.setDataDescriptorFactory(DataDescriptorFactory.NO_ACTION);
+        writer.setThreadCount(getWriterThreadCount());
+        writer.setCompressionPolicy(getCompressionPolicy());
+    }
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    /**
+     * Compression of the apk writers created by this module, null for
+     * {@link CompressionPolicy#defaultPolicy()}
+     * */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+    public int getWriterThreadCount() {
+        return writerThreadCount;
+    }
+    /**
+     * Thread count of the apk writers created by this module, see {@link ApkWriter#setThreadCount(int)}
+     * */
+    public void setWriterThreadCount(int writerThreadCount) {
+        this.writerThreadCount = writerThreadCount;
     }
     public void uncompressNonXmlResFiles() {
         for(ResFile resFile:listResFiles()){
@@ -861,6 +897,13 @@ public class ApkModule implements ApkFile, Closeable {
         manifestBlock.setApkFile(this);
         ensureFrameworkLinked();
     }
+    private boolean isOwnLinkedManifest(AndroidManifestBlock manifestBlock, TableBlock tableBlock) {
+        if(manifestBlock.getApkFile() != this) {
+            return false;
+        }
+        PackageBlock packageBlock = manifestBlock.getPackageBlock();
+        return packageBlock != null && packageBlock.getTableBlock() == tableBlock;
+    }
     private void unlinkLoadedManifest() {
         AndroidManifestBlock manifestBlock = this.mManifestBlock;
         if(manifestBlock == null) {
@@ -896,6 +939,31 @@ public class ApkModule implements ApkFile, Closeable {
             tableBlock.addFramework(framework);
         }
     }
+    /**
+     * Drops parsed manifest and table, the entries are restored to their original input
+     * sources thus unsaved changes are lost. Blocks created in memory (without original
+     * source) are kept.
+     * */
+    public void releaseLoadedBlocks(){
+        InputSource original = this.mManifestOriginalSource;
+        AndroidManifestBlock manifestBlock = this.mManifestBlock;
+        TableBlock tableBlock = this.mTableBlock;
+        boolean releaseTable = tableBlock != null && this.mTableOriginalSource != null;
+        if(manifestBlock != null && original != null){
+            addInputSource(original);
+            // The block may still be referenced by other module (e.g. merged), only the link
+            // made by this module to its own released table is dropped
+            if(releaseTable && isOwnLinkedManifest(manifestBlock, tableBlock)){
+                unlinkLoadedManifest();
+            }
+            mManifestBlock = null;
+        }
+        original = this.mTableOriginalSource;
+        if(releaseTable){
+            addInputSource(original);
+            mTableBlock = null;
+        }
+    }
     public void discardManifestChanges(){
         getZipEntryMap().add(getManifestOriginalSource());
     }
@@ -1083,9 +1151,7 @@ public class ApkModule implements ApkFile, Closeable {
             tableBlock = (TableBlock) ((BlockInputSource<?>) inputSource).getBlock();
         }else {
             setTableOriginalSource(inputSource);
-            InputStream inputStream = inputSource.openStream();
-            tableBlock = TableBlock.load(inputStream);
-            inputStream.close();
+            tableBlock = TableBlock.load(inputSource.openBlockReader());
         }
         BlockInputSource<TableBlock> blockInputSource = new BlockInputSource<>(
                 inputSource.getName(), tableBlock);
@@ -1149,13 +1215,28 @@ public class ApkModule implements ApkFile, Closeable {
         merge(module, false);
     }
     public void merge(ApkModule module, boolean force) throws IOException {
+        merge(module, force, null);
+    }
+    /**
+     * @param executor if not null, resource types of the table are merged concurrently
+     * */
+    public void merge(ApkModule module, boolean force, ExecutorService executor) throws IOException {
+        merge(module, force, executor, true);
+    }
+    /**
+     * @param mergeTable if false, resources.arsc is handled like other files (the first one
+     *                   is kept), used when tables are merged separately e.g. {@link TableStreamMerger}
+     * */
+    public void merge(ApkModule module, boolean force, ExecutorService executor, boolean mergeTable) throws IOException {
         if(module == null || module == this){
             return;
         }
         logMessage("Merging: " + module.getModuleName());
         validateMerge(module, force);
         mergeDexFiles(module);
-        mergeTable(module);
+        if(mergeTable){
+            mergeTable(module, executor);
+        }
         mergeFiles(module);
         getUncompressedFiles().merge(module.getUncompressedFiles());
     }
@@ -1198,7 +1279,7 @@ public class ApkModule implements ApkFile, Closeable {
         }
         logMessage(msg);
     }
-    private void mergeTable(ApkModule module) {
+    private void mergeTable(ApkModule module, ExecutorService executor) {
         if(!module.hasTableBlock()){
             return;
         }
@@ -1211,28 +1292,63 @@ public class ApkModule implements ApkFile, Closeable {
             exist=getTableBlock();
         }
         TableBlock coming=module.getTableBlock();
-        exist.merge(coming);
+        exist.merge(coming, executor);
     }
     private void mergeFiles(ApkModule module) {
         ZipEntryMap entryMapExist = getZipEntryMap();
-        ZipEntryMap entryMapComing = module.getZipEntryMap();
-        Map<String, InputSource> comingAlias = entryMapComing.toAliasMap();
-        Map<String, InputSource> existAlias = entryMapExist.toAliasMap();
         UncompressedFiles uncompressedFiles = module.getUncompressedFiles();
-        for(InputSource inputSource:comingAlias.values()){
-            if(existAlias.containsKey(inputSource.getAlias())
-                    || existAlias.containsKey(inputSource.getName())){
+        String moduleName = module.getModuleName();
+        // Entry map is keyed by alias, look up directly instead of copying it per module.
+        // Added entries are collected first so that coming entries are checked only against existing
+        List<InputSource> addList = new ArrayList<>();
+        for(InputSource inputSource : module.getZipEntryMap().toArray()){
+            String alias = inputSource.getAlias();
+            if(entryMapExist.contains(alias)){
+                onDuplicatePath(alias, moduleName);
+                continue;
+            }
+            if(entryMapExist.contains(inputSource.getName())){
+                onDuplicatePath(inputSource.getName(), moduleName);
                 continue;
             }
             if(DexFileInputSource.isDexName(inputSource.getName())){
                 continue;
             }
-            if(inputSource.getAlias().startsWith("lib/")){
-                uncompressedFiles.removePath(inputSource.getAlias());
+            if(alias.startsWith("lib/")){
+                uncompressedFiles.removePath(alias);
             }
-            logVerbose("Added: " + inputSource.getAlias());
+            logVerbose("Added: " + alias);
+            addList.add(inputSource);
+        }
+        Map<String, String> pathOwners = this.mPathOwners;
+        if(pathOwners == null){
+            pathOwners = new HashMap<>();
+            this.mPathOwners = pathOwners;
+        }
+        for(InputSource inputSource : addList){
             entryMapExist.add(inputSource);
+            pathOwners.put(inputSource.getAlias(), moduleName);
+        }
+    }
+    private void onDuplicatePath(String path, String skippedModule){
+        if(TableBlock.FILE_NAME.equals(path)){
+            // Tables are merged, not picked
+            return;
+        }
+        Map<String, String> pathOwners = this.mPathOwners;
+        String owner = pathOwners != null ? pathOwners.get(path) : null;
+        if(owner == null){
+            return;
         }
+        mMergeConflicts.put(path, owner);
+        logVerbose("Duplicate: " + path + ", kept [" + owner + "], skipped [" + skippedModule + "]");
+    }
+    /**
+     * Paths found in more than one of the modules merged into this module, mapped to name
+     * of the module whose entry was kept (the first merged one)
+     * */
+    public Map<String, String> getMergeConflicts(){
+        return mMergeConflicts;
     }
     private void mergeDexFiles(ApkModule module){
         UncompressedFiles uncompressedFiles = module.getUncompressedFiles();
@@ -1300,7 +1416,9 @@ public class ApkModule implements ApkFile, Closeable {
         return loadApkFile(apkFile, ApkUtil.DEF_MODULE_NAME);
     }
     public static ApkModule loadApkFile(File apkFile, String moduleName) throws IOException {
-        ArchiveFile archive = new ArchiveFile(apkFile);
+        return loadApkArchive(new ArchiveFile(apkFile), moduleName);
+    }
+    public static ApkModule loadApkArchive(ArchiveFile archive, String moduleName) {
         ApkModule apkModule = new ApkModule(moduleName, archive.createZipEntryMap());
         apkModule.setApkSignatureBlock(archive.getApkSignatureBlock());
         apkModule.setCloseable(archive);
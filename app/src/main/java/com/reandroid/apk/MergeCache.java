@@ -0,0 +1,290 @@
+/*
+  *  Copyright (C) 2022 github.com/REAndroid
+  *
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *      http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+package com.reandroid.apk;
+
+import com.reandroid.archive.FileInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.json.JSONArray;
+import com.reandroid.json.JSONException;
+import com.reandroid.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps merged resources.arsc of {@link ApkBundle#mergeModules(boolean)} together with
+ * content hash and table types of each module. On re-merge, if only some splits changed
+ * and the types (package, type, config) they contribute are not shared with unchanged
+ * modules, the cached table is merged with just the changed splits instead of merging
+ * all tables again.
+ * */
+public class MergeCache {
+    private final File dir;
+    private final Map<String, Record> records;
+    private final Map<String, Record> currentRecords;
+    private APKLogger apkLogger;
+    private boolean unchanged;
+
+    public MergeCache(File dir){
+        this.dir = dir;
+        this.records = new HashMap<>();
+        this.currentRecords = new LinkedHashMap<>();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+    public File getTableFile(){
+        return new File(dir, TableBlock.FILE_NAME);
+    }
+    /**
+     * True if the last {@link #load(Collection)} found all modules identical to the cached ones
+     * */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+    public void clear(){
+        records.clear();
+        currentRecords.clear();
+        unchanged = false;
+        getTableFile().delete();
+        new File(dir, FILE_INDEX).delete();
+    }
+    /**
+     * Hashes modules and reads the cache index, must be called before tables of modules
+     * are loaded so that hashes are computed from the original sources
+     * */
+    void load(Collection<ApkModule> moduleList) throws IOException {
+        records.clear();
+        currentRecords.clear();
+        unchanged = false;
+        readIndex();
+        for(ApkModule module : moduleList){
+            String name = module.getModuleName();
+            String hash = hashModule(module);
+            Record record = records.get(name);
+            if(record == null || !hash.equals(record.hash)){
+                record = new Record(name, hash, TableStreamMerger.listTypeKeys(
+                        module.getInputSource(TableBlock.FILE_NAME)));
+            }
+            currentRecords.put(name, record);
+        }
+        if(!records.isEmpty() && records.keySet().equals(currentRecords.keySet())){
+            unchanged = true;
+            for(Record record : currentRecords.values()){
+                if(record != records.get(record.name)){
+                    unchanged = false;
+                    break;
+                }
+            }
+        }
+    }
+    /**
+     * Returns merger of the cached table and tables of changed modules, or null if
+     * tables need to be fully merged
+     * */
+    TableStreamMerger createTableMerger(ApkModule base, List<ApkModule> moduleList){
+        File tableFile = getTableFile();
+        if(base == null || records.isEmpty() || !tableFile.isFile()){
+            return null;
+        }
+        Record baseRecord = records.get(base.getModuleName());
+        if(baseRecord == null || !baseRecord.base
+                || baseRecord != currentRecords.get(base.getModuleName())){
+            return null;
+        }
+        Set<String> affected = new HashSet<>();
+        Set<String> kept = new HashSet<>();
+        List<ApkModule> changedList = new ArrayList<>();
+        for(ApkModule module : moduleList){
+            String name = module.getModuleName();
+            Record current = currentRecords.get(name);
+            Record cached = records.get(name);
+            if(current == cached){
+                kept.addAll(current.types);
+                continue;
+            }
+            if(cached != null){
+                affected.addAll(cached.types);
+            }
+            affected.addAll(current.types);
+            changedList.add(module);
+        }
+        for(Record cached : records.values()){
+            if(!currentRecords.containsKey(cached.name)){
+                affected.addAll(cached.types);
+            }
+        }
+        for(String type : affected){
+            if(kept.contains(type)){
+                logMessage("Changed splits share resource types with unchanged, full table merge");
+                return null;
+            }
+        }
+        logMessage("Re-merging changed splits: " + changedList.size());
+        TableStreamMerger tableMerger = new TableStreamMerger();
+        tableMerger.add(new FileInputSource(tableFile, TableBlock.FILE_NAME), affected);
+        for(ApkModule module : changedList){
+            tableMerger.add(module.getInputSource(TableBlock.FILE_NAME));
+        }
+        return tableMerger;
+    }
+    /**
+     * Stores merged table and hashes of modules passed to the last {@link #load(Collection)},
+     * called only after full merges so that the cached table is never a re-merged one
+     * */
+    void save(ApkModule base, InputSource mergedTable) throws IOException {
+        File tableFile = getTableFile();
+        File indexFile = new File(dir, FILE_INDEX);
+        // Index is removed first, an interrupted save leaves no cache instead of a wrong one
+        indexFile.delete();
+        if(mergedTable == null){
+            tableFile.delete();
+            return;
+        }
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        File tmp = new File(dir, TableBlock.FILE_NAME + ".tmp");
+        mergedTable.write(tmp);
+        tableFile.delete();
+        if(!tmp.renameTo(tableFile)){
+            throw new IOException("Failed to rename: " + tmp + " -> " + tableFile);
+        }
+        String baseName = base != null ? base.getModuleName() : null;
+        JSONArray jsonArray = new JSONArray();
+        for(Record record : currentRecords.values()){
+            record.base = record.name.equals(baseName);
+            jsonArray.put(record.toJson());
+        }
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put(NAME_version, VERSION);
+        jsonObject.put(NAME_modules, jsonArray);
+        jsonObject.write(indexFile);
+        records.clear();
+        records.putAll(currentRecords);
+    }
+    private void readIndex(){
+        File indexFile = new File(dir, FILE_INDEX);
+        if(!indexFile.isFile()){
+            return;
+        }
+        try {
+            JSONObject jsonObject = new JSONObject(indexFile);
+            if(jsonObject.optInt(NAME_version) != VERSION){
+                return;
+            }
+            JSONArray jsonArray = jsonObject.getJSONArray(NAME_modules);
+            int length = jsonArray.length();
+            for(int i = 0; i < length; i++){
+                Record record = Record.fromJson(jsonArray.getJSONObject(i));
+                records.put(record.name, record);
+            }
+        } catch (IOException | JSONException exception) {
+            logMessage("Ignoring invalid merge cache: " + exception.getMessage());
+            records.clear();
+        }
+    }
+    public void setAPKLogger(APKLogger logger) {
+        this.apkLogger = logger;
+    }
+    private void logMessage(String msg) {
+        APKLogger apkLogger = this.apkLogger;
+        if(apkLogger != null){
+            apkLogger.logMessage(msg);
+        }
+    }
+
+    /**
+     * Hash of entry paths, CRCs and sizes. For archive entries these come from the
+     * central directory, so entries are not read.
+     * */
+    public static String hashModule(ApkModule module) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+        InputSource[] sources = module.getZipEntryMap().toArray();
+        Arrays.sort(sources, (source1, source2) -> source1.getAlias().compareTo(source2.getAlias()));
+        byte[] buffer = new byte[16];
+        for(InputSource inputSource : sources){
+            digest.update(inputSource.getAlias().getBytes(StandardCharsets.UTF_8));
+            long crc = inputSource.getCrc();
+            long length = inputSource.getLength();
+            for(int i = 0; i < 8; i++){
+                buffer[i] = (byte) (crc >>> (i * 8));
+                buffer[i + 8] = (byte) (length >>> (i * 8));
+            }
+            digest.update(buffer);
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    static class Record {
+        final String name;
+        final String hash;
+        final Set<String> types;
+        boolean base;
+
+        Record(String name, String hash, Set<String> types){
+            this.name = name;
+            this.hash = hash;
+            this.types = types;
+        }
+        JSONObject toJson(){
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put(NAME_name, name);
+            jsonObject.put(NAME_hash, hash);
+            jsonObject.put(NAME_base, base);
+            jsonObject.put(NAME_types, new JSONArray(types));
+            return jsonObject;
+        }
+        static Record fromJson(JSONObject jsonObject){
+            JSONArray jsonArray = jsonObject.getJSONArray(NAME_types);
+            Set<String> types = new HashSet<>();
+            int length = jsonArray.length();
+            for(int i = 0; i < length; i++){
+                types.add(jsonArray.getString(i));
+            }
+            Record record = new Record(jsonObject.getString(NAME_name),
+                    jsonObject.getString(NAME_hash), types);
+            record.base = jsonObject.optBoolean(NAME_base);
+            return record;
+        }
+    }
+
+    private static final String FILE_INDEX = "merge-cache.json";
+    private static final int VERSION = 1;
+    private static final String NAME_version = "version";
+    private static final String NAME_modules = "modules";
+    private static final String NAME_name = "name";
+    private static final String NAME_hash = "hash";
+    private static final String NAME_base = "base";
+    private static final String NAME_types = "types";
+}
@@ -0,0 +1,218 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apk;
+
+import com.android.apksig.internal.apk.AndroidBinXmlParser;
+import com.reandroid.app.AndroidManifest;
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.ArchiveException;
+import com.reandroid.archive.block.CentralEntryHeader;
+import com.reandroid.archive.block.LocalFileHeader;
+import com.reandroid.archive.io.ZipCodecPool;
+import com.reandroid.archive.io.ZipFileInput;
+import com.reandroid.archive.io.ZipInput;
+import com.reandroid.archive.model.CentralFileDirectory;
+import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
+import com.reandroid.utils.io.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Lightweight split metadata read from central directory and
+ * AndroidManifest.xml only, without building {@link ApkModule}
+ * */
+public class SplitProbe {
+    private final String name;
+    private final String packageName;
+    private final int versionCode;
+    private final String splitName;
+    private final List<String> abiList;
+    private final List<String> nativeLibraries;
+
+    private SplitProbe(String name, String packageName, int versionCode, String splitName,
+                       List<String> abiList, List<String> nativeLibraries){
+        this.name = name;
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.splitName = splitName;
+        this.abiList = Collections.unmodifiableList(abiList);
+        this.nativeLibraries = Collections.unmodifiableList(nativeLibraries);
+    }
+
+    public String getName() {
+        return name;
+    }
+    public String getPackageName() {
+        return packageName;
+    }
+    public int getVersionCode() {
+        return versionCode;
+    }
+    public String getSplitName() {
+        return splitName;
+    }
+    public boolean isSplit(){
+        return splitName != null;
+    }
+    public List<String> getAbiList() {
+        return abiList;
+    }
+    public List<String> getNativeLibraries() {
+        return nativeLibraries;
+    }
+    public boolean containsNativeLibrary(String abi, String libName){
+        return nativeLibraries.contains(LIB_DIR + abi + "/" + libName);
+    }
+    @Override
+    public String toString(){
+        return name + " {package=" + packageName + ", versionCode=" + versionCode
+                + ", split=" + splitName + ", abi=" + abiList + "}";
+    }
+
+    public static SplitProbe get(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long modified = file.lastModified();
+        synchronized (CACHE){
+            CacheEntry entry = CACHE.get(key);
+            if(entry != null && entry.length == length && entry.modified == modified){
+                return entry.probe;
+            }
+        }
+        SplitProbe probe = probe(file);
+        synchronized (CACHE){
+            CACHE.put(key, new CacheEntry(probe, length, modified));
+        }
+        return probe;
+    }
+    public static void clearCache(){
+        synchronized (CACHE){
+            CACHE.clear();
+        }
+    }
+    public static SplitProbe probe(File file) throws IOException {
+        try (ZipFileInput zipInput = new ZipFileInput(file)) {
+            return probe(file.getName(), zipInput);
+        }
+    }
+    public static SplitProbe probe(String name, ZipInput zipInput) throws IOException {
+        CentralFileDirectory cfd = new CentralFileDirectory();
+        cfd.visit(zipInput);
+        CentralEntryHeader manifestHeader = null;
+        List<String> abiList = new ArrayList<>();
+        List<String> nativeLibraries = new ArrayList<>();
+        for(CentralEntryHeader ceh : cfd.getHeaderList()){
+            String path = ceh.getFileName();
+            if(manifestHeader == null && AndroidManifestBlock.FILE_NAME.equals(path)){
+                manifestHeader = ceh;
+            }else if(path.startsWith(LIB_DIR) && !path.endsWith("/")){
+                int i = path.indexOf('/', LIB_DIR.length());
+                if(i < 0){
+                    continue;
+                }
+                String abi = path.substring(LIB_DIR.length(), i);
+                if(!abiList.contains(abi)){
+                    abiList.add(abi);
+                }
+                nativeLibraries.add(path);
+            }
+        }
+        if(manifestHeader == null){
+            return new SplitProbe(name, null, 0, null, abiList, nativeLibraries);
+        }
+        ByteBuffer manifest = ByteBuffer.wrap(readEntry(zipInput, manifestHeader));
+        try {
+            return parseManifest(name, manifest, abiList, nativeLibraries);
+        } catch (AndroidBinXmlParser.XmlParserException e) {
+            throw new IOException("Malformed " + AndroidManifestBlock.FILE_NAME + " in " + name, e);
+        }
+    }
+    private static SplitProbe parseManifest(String name, ByteBuffer manifest, List<String> abiList,
+                                            List<String> nativeLibraries) throws AndroidBinXmlParser.XmlParserException {
+        String packageName = null;
+        int versionCode = 0;
+        String splitName = null;
+        AndroidBinXmlParser parser = new AndroidBinXmlParser(manifest);
+        int eventType = parser.getEventType();
+        while (eventType != AndroidBinXmlParser.EVENT_END_DOCUMENT){
+            if(eventType == AndroidBinXmlParser.EVENT_START_ELEMENT && parser.getDepth() == 1
+                    && AndroidManifest.TAG_manifest.equals(parser.getName())){
+                int count = parser.getAttributeCount();
+                for(int i = 0; i < count; i++){
+                    if(parser.getAttributeNameResourceId(i) == AndroidManifest.ID_versionCode){
+                        if(parser.getAttributeValueType(i) == AndroidBinXmlParser.VALUE_TYPE_INT){
+                            versionCode = parser.getAttributeIntValue(i);
+                        }
+                        continue;
+                    }
+                    if(!parser.getAttributeNamespace(i).isEmpty()){
+                        continue;
+                    }
+                    String attrName = parser.getAttributeName(i);
+                    if(AndroidManifest.NAME_PACKAGE.equals(attrName)){
+                        packageName = parser.getAttributeStringValue(i);
+                    }else if(AndroidManifest.NAME_split.equals(attrName)){
+                        splitName = parser.getAttributeStringValue(i);
+                    }
+                }
+                break;
+            }
+            eventType = parser.next();
+        }
+        return new SplitProbe(name, packageName, versionCode, splitName, abiList, nativeLibraries);
+    }
+    private static byte[] readEntry(ZipInput zipInput, CentralEntryHeader ceh) throws IOException {
+        long offset = ceh.getLocalRelativeOffset();
+        InputStream inputStream = zipInput.getInputStream(offset, zipInput.getLength() - offset);
+        LocalFileHeader lfh = LocalFileHeader.read(inputStream);
+        inputStream.close();
+        if(lfh == null){
+            throw new ArchiveException("Error reading LFH at "
+                    + offset + ", for CEH = " + ceh.getFileName());
+        }
+        offset = offset + lfh.countBytes();
+        if(ceh.getMethod() == Archive.STORED){
+            return IOUtil.readFully(zipInput.getInputStream(offset, ceh.getSize()));
+        }
+        return IOUtil.readFully(ZipCodecPool.openInflaterStream(
+                zipInput.getInputStream(offset, ceh.getCompressedSize())));
+    }
+
+    private static final String LIB_DIR = "lib/";
+    private static final int CACHE_SIZE = 64;
+    /** Least recently used probes, bounded as entries are never removed otherwise * */
+    private static final Map<String, CacheEntry> CACHE = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest){
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static class CacheEntry {
+        final SplitProbe probe;
+        final long length;
+        final long modified;
+        CacheEntry(SplitProbe probe, long length, long modified){
+            this.probe = probe;
+            this.length = length;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,752 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apk;
+
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.base.Block;
+import com.reandroid.arsc.chunk.ChunkType;
+import com.reandroid.arsc.chunk.LibraryBlock;
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.StagedAlias;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.header.InfoHeader;
+import com.reandroid.arsc.header.PackageHeader;
+import com.reandroid.arsc.header.SpecHeader;
+import com.reandroid.arsc.header.TableHeader;
+import com.reandroid.arsc.header.TypeHeader;
+import com.reandroid.arsc.io.BlockReader;
+import com.reandroid.arsc.item.StringItem;
+import com.reandroid.arsc.item.TypeString;
+import com.reandroid.arsc.pool.SpecStringPool;
+import com.reandroid.arsc.pool.StringPool;
+import com.reandroid.arsc.pool.TableStringPool;
+import com.reandroid.arsc.pool.TypeStringPool;
+import com.reandroid.arsc.value.ResConfig;
+import com.reandroid.arsc.value.ValueType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Merges resources.arsc of split apks without building full tables. Only string pools and
+ * offsets of spec/type chunks are kept in memory, type chunks are then read again one by one
+ * and written to output file with string and key references remapped to the merged pools.
+ * Entries are picked the same way as {@link TableBlock#merge(TableBlock)}, the first source
+ * wins unless its entry is empty and a later one is not.
+ * */
+public class TableStreamMerger {
+    private final List<InputSource> sourceList;
+    private final List<Set<String>> excludedList;
+    private APKLogger apkLogger;
+
+    public TableStreamMerger(){
+        this.sourceList = new ArrayList<>();
+        this.excludedList = new ArrayList<>();
+    }
+
+    /**
+     * Adds resources.arsc source, entries of earlier sources take precedence
+     * */
+    public void add(InputSource inputSource){
+        add(inputSource, null);
+    }
+    /**
+     * Same as {@link #add(InputSource)}, but type chunks whose {@link #toTypeKey(int, TypeHeader)}
+     * is in excludedTypes are skipped
+     * */
+    public void add(InputSource inputSource, Set<String> excludedTypes){
+        if(inputSource != null){
+            sourceList.add(inputSource);
+            excludedList.add(excludedTypes);
+        }
+    }
+    public int size(){
+        return sourceList.size();
+    }
+    public void write(File file) throws IOException {
+        List<InputSource> sourceList = this.sourceList;
+        int count = sourceList.size();
+        if(count == 0){
+            throw new IOException("Nothing to merge, empty table sources");
+        }
+        logMessage("Scanning tables: " + count);
+        TableBlock tableBlock = new TableBlock();
+        Map<Integer, PackageMerge> packageMap = new TreeMap<>();
+        StringItem[][] tableStrings = new StringItem[count][];
+        for(int i = 0; i < count; i++){
+            BlockReader reader = sourceList.get(i).openBlockReader();
+            try {
+                scanTable(i, reader, tableBlock, tableStrings, packageMap, excludedList.get(i));
+            } finally {
+                reader.close();
+            }
+        }
+        // Pools are refreshed (sorted) only once, string indexes must not change after this
+        TableStringPool stringPool = tableBlock.getStringPool();
+        stringPool.refresh();
+        byte[] stringPoolBytes = stringPool.getBytes();
+        int[][] stringMap = toIndexMap(tableStrings);
+        for(PackageMerge packageMerge : packageMap.values()){
+            packageMerge.prepare();
+        }
+        logMessage("Writing merged table: " + file.getName());
+        BlockReader[] readers = new BlockReader[count];
+        RandomAccessFile output = null;
+        try {
+            for(int i = 0; i < count; i++){
+                readers[i] = sourceList.get(i).openBlockReader();
+            }
+            output = new RandomAccessFile(file, "rw");
+            output.setLength(0);
+            TableHeader tableHeader = new TableHeader();
+            tableHeader.refreshHeader();
+            tableHeader.getPackageCount().set(packageMap.size());
+            output.write(tableHeader.getBytes());
+            output.write(stringPoolBytes);
+            for(PackageMerge packageMerge : packageMap.values()){
+                packageMerge.write(output, readers, stringMap);
+            }
+            tableHeader.setChunkSize((int) output.length());
+            output.seek(0);
+            output.write(tableHeader.getBytes());
+        } finally {
+            for(BlockReader reader : readers){
+                if(reader != null){
+                    reader.close();
+                }
+            }
+            if(output != null){
+                output.close();
+            }
+        }
+    }
+    private void scanTable(int index, BlockReader reader, TableBlock tableBlock,
+                           StringItem[][] tableStrings, Map<Integer, PackageMerge> packageMap,
+                           Set<String> excludedTypes) throws IOException {
+        TableHeader tableHeader = new TableHeader();
+        tableHeader.readBytes(reader);
+        if(tableHeader.getChunkType() != ChunkType.TABLE){
+            throw new IOException("Not a table chunk: " + tableHeader);
+        }
+        int end = Math.min(tableHeader.getChunkSize(), reader.length());
+        reader.seek(tableHeader.getHeaderSize());
+        InfoHeader infoHeader;
+        while (reader.getPosition() < end && (infoHeader = InfoHeader.read(reader)) != null){
+            int position = reader.getPosition();
+            int chunkSize = infoHeader.getChunkSize();
+            if(chunkSize < InfoHeader.INFO_MIN_SIZE){
+                break;
+            }
+            BlockReader chunkReader = reader.create(position, chunkSize);
+            ChunkType chunkType = infoHeader.getChunkType();
+            if(chunkType == ChunkType.STRING){
+                TableStringPool coming = new TableStringPool(true);
+                coming.readBytes(chunkReader);
+                tableStrings[index] = mergeStrings(tableBlock.getStringPool(), coming);
+            }else if(chunkType == ChunkType.PACKAGE){
+                PackageHeader packageHeader = new PackageHeader();
+                packageHeader.readBytes(chunkReader);
+                int id = packageHeader.getPackageId().get();
+                PackageMerge packageMerge = packageMap.get(id);
+                if(packageMerge == null){
+                    packageMerge = new PackageMerge(packageHeader,
+                            tableBlock.getPackageArray().getOrCreate(id), tableStrings.length);
+                    packageMap.put(id, packageMerge);
+                }
+                packageMerge.scan(index, position, chunkReader, packageHeader, excludedTypes);
+            }
+            reader.seek(position + chunkSize);
+        }
+    }
+    /**
+     * Lists {@link #toTypeKey(int, TypeHeader)} of all type chunks without loading the table
+     * */
+    public static Set<String> listTypeKeys(InputSource inputSource) throws IOException {
+        Set<String> results = new HashSet<>();
+        if(inputSource == null){
+            return results;
+        }
+        BlockReader reader = inputSource.openBlockReader();
+        try {
+            TableHeader tableHeader = new TableHeader();
+            tableHeader.readBytes(reader);
+            if(tableHeader.getChunkType() != ChunkType.TABLE){
+                throw new IOException("Not a table chunk: " + tableHeader);
+            }
+            int end = Math.min(tableHeader.getChunkSize(), reader.length());
+            reader.seek(tableHeader.getHeaderSize());
+            InfoHeader infoHeader;
+            while (reader.getPosition() < end && (infoHeader = InfoHeader.read(reader)) != null){
+                int position = reader.getPosition();
+                int chunkSize = infoHeader.getChunkSize();
+                if(chunkSize < InfoHeader.INFO_MIN_SIZE){
+                    break;
+                }
+                if(infoHeader.getChunkType() == ChunkType.PACKAGE){
+                    listTypeKeys(reader.create(position, chunkSize), results);
+                }
+                reader.seek(position + chunkSize);
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+    private static void listTypeKeys(BlockReader reader, Set<String> results) throws IOException {
+        PackageHeader header = new PackageHeader();
+        header.readBytes(reader);
+        int packageId = header.getPackageId().get();
+        int end = Math.min(header.getChunkSize(), reader.length());
+        reader.seek(header.getHeaderSize());
+        InfoHeader infoHeader;
+        while (reader.getPosition() < end && (infoHeader = InfoHeader.read(reader)) != null){
+            int position = reader.getPosition();
+            int chunkSize = infoHeader.getChunkSize();
+            if(chunkSize < InfoHeader.INFO_MIN_SIZE){
+                break;
+            }
+            if(infoHeader.getChunkType() == ChunkType.TYPE){
+                results.add(toTypeKey(packageId, TypeHeader.read(reader.create(position, chunkSize))));
+            }
+            reader.seek(position + chunkSize);
+        }
+    }
+    /**
+     * Identifies type chunks of the same package, type and config, sparse and dense
+     * chunks share the same key
+     * */
+    public static String toTypeKey(int packageId, TypeHeader typeHeader){
+        return packageId + "/" + typeHeader.getId().get() + "/" + typeHeader.getConfig().getQualifiers();
+    }
+    private void logMessage(String msg) {
+        APKLogger apkLogger = this.apkLogger;
+        if(apkLogger != null){
+            apkLogger.logMessage(msg);
+        }
+    }
+    public void setAPKLogger(APKLogger logger) {
+        this.apkLogger = logger;
+    }
+
+    private static <T extends StringItem> StringItem[] mergeStrings(StringPool<T> stringPool, StringPool<T> coming){
+        stringPool.merge(coming);
+        int size = coming.size();
+        StringItem[] results = new StringItem[size];
+        for(int i = 0; i < size; i++){
+            T item = coming.get(i);
+            T merged = stringPool.getByBytes(item);
+            if(merged == null){
+                merged = stringPool.get(item.getXml(), stringItem -> stringItem.compareTo(item) == 0);
+            }
+            results[i] = merged;
+        }
+        return results;
+    }
+    private static int[][] toIndexMap(StringItem[][] stringItems){
+        int length = stringItems.length;
+        int[][] results = new int[length][];
+        for(int i = 0; i < length; i++){
+            StringItem[] items = stringItems[i];
+            if(items == null){
+                continue;
+            }
+            int[] indexes = new int[items.length];
+            for(int j = 0; j < items.length; j++){
+                StringItem item = items[j];
+                indexes[j] = item != null ? item.getIndex() : j;
+            }
+            results[i] = indexes;
+        }
+        return results;
+    }
+    private static int remap(int[] indexMap, int index){
+        if(indexMap == null || index < 0 || index >= indexMap.length){
+            return index;
+        }
+        return indexMap[index];
+    }
+    private static int getShortUnsigned(BlockReader reader, int position) throws IOException {
+        return reader.getShort(position) & 0xffff;
+    }
+    private static boolean isComplex(BlockReader reader, int position) throws IOException {
+        int flags = getShortUnsigned(reader, position + 2);
+        return (flags & FLAG_COMPACT) == 0 && (flags & FLAG_COMPLEX) != 0;
+    }
+    private static boolean isEmptyEntry(BlockReader reader, int position) throws IOException {
+        int flags = getShortUnsigned(reader, position + 2);
+        if((flags & FLAG_COMPACT) != 0){
+            return (flags >> 8) == 0;
+        }
+        if((flags & FLAG_COMPLEX) != 0){
+            return reader.getInteger(position + 12) == 0;
+        }
+        int size = getShortUnsigned(reader, position);
+        return getShortUnsigned(reader, position + size + 2) >> 8 == 0;
+    }
+    /**
+     * Same as {@link com.reandroid.arsc.value.Entry#merge(com.reandroid.arsc.value.Entry)}
+     * */
+    private static boolean replaces(BlockReader existReader, int existPosition,
+                                    BlockReader reader, int position) throws IOException {
+        return isEmptyEntry(existReader, existPosition)
+                && !isEmptyEntry(reader, position)
+                && isComplex(existReader, existPosition) == isComplex(reader, position);
+    }
+    private static byte[] readEntry(BlockReader reader, int position,
+                                    int[] stringMap, int[] keyMap) throws IOException {
+        int flags = getShortUnsigned(reader, position + 2);
+        if((flags & FLAG_COMPACT) != 0){
+            int key = remap(keyMap, getShortUnsigned(reader, position));
+            int type = flags >> 8;
+            int data = reader.getInteger(position + 4);
+            if(type == TYPE_STRING){
+                data = remap(stringMap, data);
+            }
+            byte[] bytes;
+            if(key <= 0xffff){
+                bytes = new byte[8];
+                Block.putShort(bytes, 0, key);
+                Block.putShort(bytes, 2, flags);
+                Block.putInteger(bytes, 4, data);
+            }else {
+                // Merged key pool outgrows 16-bit index, expand to regular entry
+                bytes = new byte[16];
+                Block.putShort(bytes, 0, 8);
+                Block.putShort(bytes, 2, flags & 0xff & ~FLAG_COMPACT);
+                Block.putInteger(bytes, 4, key);
+                Block.putShort(bytes, 8, 8);
+                bytes[11] = (byte) type;
+                Block.putInteger(bytes, 12, data);
+            }
+            return bytes;
+        }
+        int size = getShortUnsigned(reader, position);
+        boolean complex = (flags & FLAG_COMPLEX) != 0;
+        int length;
+        if(complex){
+            int count = reader.getInteger(position + 12);
+            int offset = position + size;
+            for(int i = 0; i < count; i++){
+                offset += 4;
+                offset += Math.max(8, getShortUnsigned(reader, offset));
+            }
+            length = offset - position;
+        }else {
+            length = size + Math.max(8, getShortUnsigned(reader, position + size));
+        }
+        byte[] bytes = new byte[length];
+        reader.seek(position);
+        if(reader.readFully(bytes) != length){
+            throw new EOFException("Unexpected end of entry at: " + position);
+        }
+        Block.putInteger(bytes, 4, remap(keyMap, Block.getInteger(bytes, 4)));
+        if(complex){
+            int count = Block.getInteger(bytes, 12);
+            int offset = size;
+            for(int i = 0; i < count; i++){
+                offset += 4;
+                remapValue(bytes, offset, stringMap);
+                offset += Math.max(8, Block.getShortUnsigned(bytes, offset));
+            }
+        }else {
+            remapValue(bytes, size, stringMap);
+        }
+        return bytes;
+    }
+    private static void remapValue(byte[] bytes, int offset, int[] stringMap){
+        if(bytes[offset + 3] == TYPE_STRING){
+            Block.putInteger(bytes, offset + 4,
+                    remap(stringMap, Block.getInteger(bytes, offset + 4)));
+        }
+    }
+
+    static class PackageMerge {
+        private final PackageHeader packageHeader;
+        private final Map<Integer, TypeMerge> typeMap;
+        private PackageBlock packageBlock;
+        private StringItem[][] keyStrings;
+        private int[][] keyMap;
+        private byte[] typePoolBytes;
+        private byte[] keyPoolBytes;
+        private byte[] extraBytes;
+        private int typeCount;
+        private int keyCount;
+
+        PackageMerge(PackageHeader packageHeader, PackageBlock packageBlock, int sourceCount){
+            this.packageHeader = packageHeader;
+            this.packageBlock = packageBlock;
+            this.keyStrings = new StringItem[sourceCount][];
+            this.typeMap = new TreeMap<>();
+            packageBlock.getHeaderBlock().setTypeIdOffset(packageHeader.getTypeIdOffset());
+        }
+        void scan(int index, int offset, BlockReader reader, PackageHeader header,
+                  Set<String> excludedTypes) throws IOException {
+            PackageBlock packageBlock = this.packageBlock;
+            PackageBlock coming = new PackageBlock();
+            int typePoolOffset = header.getTypeStringPoolOffset().get();
+            int keyPoolOffset = header.getSpecStringPoolOffset().get();
+            int end = Math.min(header.getChunkSize(), reader.length());
+            reader.seek(header.getHeaderSize());
+            InfoHeader infoHeader;
+            while (reader.getPosition() < end && (infoHeader = InfoHeader.read(reader)) != null){
+                int position = reader.getPosition();
+                int chunkSize = infoHeader.getChunkSize();
+                if(chunkSize < InfoHeader.INFO_MIN_SIZE){
+                    break;
+                }
+                BlockReader chunkReader = reader.create(position, chunkSize);
+                ChunkType chunkType = infoHeader.getChunkType();
+                if(chunkType == ChunkType.STRING){
+                    if(position == typePoolOffset){
+                        TypeStringPool typeStringPool = new TypeStringPool(false,
+                                header.getTypeIdOffsetItem());
+                        typeStringPool.readBytes(chunkReader);
+                        TypeStringPool exist = packageBlock.getTypeStringPool();
+                        for(TypeString typeString : typeStringPool){
+                            exist.getOrCreate(typeString.getId(), typeString.get());
+                        }
+                    }else if(position == keyPoolOffset){
+                        SpecStringPool specStringPool = new SpecStringPool(true);
+                        specStringPool.readBytes(chunkReader);
+                        keyStrings[index] = mergeStrings(packageBlock.getSpecStringPool(), specStringPool);
+                    }
+                }else if(chunkType == ChunkType.SPEC){
+                    SpecHeader specHeader = SpecHeader.read(chunkReader);
+                    getOrCreateType(specHeader.getId().get())
+                            .addSpec(new SpecRef(index, offset + position, specHeader));
+                }else if(chunkType == ChunkType.TYPE){
+                    TypeHeader typeHeader = TypeHeader.read(chunkReader);
+                    if(excludedTypes != null && excludedTypes.contains(
+                            toTypeKey(header.getPackageId().get(), typeHeader))){
+                        reader.seek(position + chunkSize);
+                        continue;
+                    }
+                    getOrCreateType(typeHeader.getId().get())
+                            .addType(new TypeRef(index, offset + position, typeHeader));
+                }else if(chunkType == ChunkType.LIBRARY){
+                    LibraryBlock libraryBlock = new LibraryBlock();
+                    libraryBlock.readBytes(chunkReader);
+                    coming.getLibraryBlock().addLibraryInfo(libraryBlock);
+                }else if(chunkType == ChunkType.OVERLAYABLE){
+                    coming.getOverlayableList().createNext().readBytes(chunkReader);
+                }else if(chunkType == ChunkType.STAGED_ALIAS){
+                    StagedAlias stagedAlias = new StagedAlias();
+                    stagedAlias.readBytes(chunkReader);
+                    coming.getStagedAliasList().add(stagedAlias);
+                }
+                reader.seek(position + chunkSize);
+            }
+            packageBlock.getLibraryBlock().merge(coming.getLibraryBlock());
+            packageBlock.getOverlayableList().merge(coming.getOverlayableList());
+            packageBlock.getStagedAliasList().merge(coming.getStagedAliasList());
+        }
+        private TypeMerge getOrCreateType(int id){
+            TypeMerge typeMerge = typeMap.get(id);
+            if(typeMerge == null){
+                typeMerge = new TypeMerge(id);
+                typeMap.put(id, typeMerge);
+            }
+            return typeMerge;
+        }
+        void prepare() throws IOException {
+            PackageBlock packageBlock = this.packageBlock;
+            TypeStringPool typeStringPool = packageBlock.getTypeStringPool();
+            typeStringPool.refresh();
+            typePoolBytes = typeStringPool.getBytes();
+            typeCount = typeStringPool.size();
+            SpecStringPool specStringPool = packageBlock.getSpecStringPool();
+            specStringPool.refresh();
+            keyPoolBytes = specStringPool.getBytes();
+            keyCount = specStringPool.size();
+            keyMap = toIndexMap(keyStrings);
+            keyStrings = null;
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            LibraryBlock libraryBlock = packageBlock.getLibraryBlock();
+            if(!libraryBlock.isEmpty()){
+                libraryBlock.refresh();
+                outputStream.write(libraryBlock.getBytes());
+            }
+            if(packageBlock.getStagedAliasList().size() != 0){
+                packageBlock.getStagedAliasList().refresh();
+                outputStream.write(packageBlock.getStagedAliasList().getBytes());
+            }
+            if(!packageBlock.getOverlayableList().isEmpty()){
+                packageBlock.getOverlayableList().refresh();
+                outputStream.write(packageBlock.getOverlayableList().getBytes());
+            }
+            extraBytes = outputStream.toByteArray();
+            this.packageBlock = null;
+        }
+        void write(RandomAccessFile output, BlockReader[] readers, int[][] stringMap) throws IOException {
+            long start = output.getFilePointer();
+            PackageHeader header = this.packageHeader;
+            int headerSize = header.countBytes();
+            header.setHeaderSize((short) headerSize);
+            header.getTypeStringPoolOffset().set(headerSize);
+            header.getTypeStringPoolCount().set(typeCount);
+            header.getSpecStringPoolOffset().set(headerSize + typePoolBytes.length);
+            header.getSpecStringPoolCount().set(keyCount);
+            output.write(header.getBytes());
+            output.write(typePoolBytes);
+            output.write(keyPoolBytes);
+            for(TypeMerge typeMerge : typeMap.values()){
+                typeMerge.write(output, readers, stringMap, keyMap);
+            }
+            output.write(extraBytes);
+            long end = output.getFilePointer();
+            header.setChunkSize((int) (end - start));
+            output.seek(start);
+            output.write(header.getBytes());
+            output.seek(end);
+        }
+    }
+    static class TypeMerge {
+        private final int id;
+        private final List<SpecRef> specList;
+        private final List<List<TypeRef>> groupList;
+        private final Map<ResConfig, List<TypeRef>> denseMap;
+        private final Map<ResConfig, List<TypeRef>> sparseMap;
+
+        TypeMerge(int id){
+            this.id = id;
+            this.specList = new ArrayList<>(2);
+            this.groupList = new ArrayList<>();
+            this.denseMap = new HashMap<>();
+            this.sparseMap = new HashMap<>();
+        }
+        void addSpec(SpecRef specRef){
+            specList.add(specRef);
+        }
+        void addType(TypeRef typeRef){
+            Map<ResConfig, List<TypeRef>> map = typeRef.sparse ? sparseMap : denseMap;
+            ResConfig resConfig = typeRef.header.getConfig();
+            List<TypeRef> group = map.get(resConfig);
+            if(group == null){
+                group = new ArrayList<>(2);
+                map.put(resConfig, group);
+                groupList.add(group);
+            }
+            group.add(typeRef);
+        }
+        void write(RandomAccessFile output, BlockReader[] readers,
+                   int[][] stringMap, int[][] keyMap) throws IOException {
+            int entryCount = 0;
+            for(SpecRef specRef : specList){
+                entryCount = Math.max(entryCount, specRef.entryCount);
+            }
+            for(List<TypeRef> group : groupList){
+                for(TypeRef typeRef : group){
+                    entryCount = Math.max(entryCount, typeRef.countEntries(readers[typeRef.source]));
+                }
+            }
+            output.write(mergeSpecs(readers, entryCount));
+            for(List<TypeRef> group : groupList){
+                byte[] bytes = mergeTypes(group, readers, entryCount, stringMap, keyMap);
+                if(bytes != null){
+                    output.write(bytes);
+                }
+            }
+        }
+        private byte[] mergeSpecs(BlockReader[] readers, int entryCount) throws IOException {
+            SpecHeader header;
+            if(specList.isEmpty()){
+                header = new SpecHeader();
+                header.getId().set((byte) id);
+                header.refreshHeader();
+            }else {
+                header = specList.get(0).header;
+            }
+            int headerSize = header.countBytes();
+            header.getEntryCount().set(entryCount);
+            header.setChunkSize(headerSize + entryCount * 4);
+            byte[] bytes = new byte[header.getChunkSize()];
+            byte[] headerBytes = header.getBytes();
+            System.arraycopy(headerBytes, 0, bytes, 0, headerBytes.length);
+            for(SpecRef specRef : specList){
+                BlockReader reader = readers[specRef.source];
+                int start = specRef.offset + specRef.headerSize;
+                int count = Math.min(entryCount, specRef.entryCount);
+                for(int i = 0; i < count; i++){
+                    int offset = headerSize + i * 4;
+                    Block.putInteger(bytes, offset, Block.getInteger(bytes, offset)
+                            | reader.getInteger(start + i * 4));
+                }
+            }
+            return bytes;
+        }
+        private byte[] mergeTypes(List<TypeRef> group, BlockReader[] readers, int entryCount,
+                                  int[][] stringMap, int[][] keyMap) throws IOException {
+            int[] selectedSources = new int[entryCount];
+            int[] selectedPositions = new int[entryCount];
+            Arrays.fill(selectedSources, -1);
+            for(TypeRef typeRef : group){
+                BlockReader reader = readers[typeRef.source];
+                int count = typeRef.header.getCountItem().get();
+                for(int i = 0; i < count; i++){
+                    int entryId = typeRef.getEntryId(reader, i);
+                    int position = typeRef.getEntryPosition(reader, i);
+                    if(position < 0 || entryId >= entryCount){
+                        continue;
+                    }
+                    int exist = selectedSources[entryId];
+                    if(exist == -1 || replaces(readers[exist], selectedPositions[entryId],
+                            reader, position)){
+                        selectedSources[entryId] = typeRef.source;
+                        selectedPositions[entryId] = position;
+                    }
+                }
+            }
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            int[] offsets = new int[entryCount];
+            int present = 0;
+            boolean aligned = true;
+            for(int i = 0; i < entryCount; i++){
+                int source = selectedSources[i];
+                if(source == -1){
+                    offsets[i] = -1;
+                    continue;
+                }
+                byte[] entry = readEntry(readers[source], selectedPositions[i],
+                        stringMap[source], keyMap[source]);
+                offsets[i] = entries.size();
+                entries.write(entry);
+                present++;
+                if(entry.length % 4 != 0){
+                    aligned = false;
+                }
+            }
+            if(present == 0){
+                return null;
+            }
+            int entriesSize = entries.size();
+            boolean sparse = group.get(0).sparse && aligned && (entriesSize / 4) <= 0xffff;
+            TypeHeader header = group.get(0).header;
+            header.setSparse(sparse);
+            header.setOffset16(false);
+            int headerSize = header.countBytes();
+            int offsetsSize = (sparse ? present : entryCount) * 4;
+            header.setHeaderSize((short) headerSize);
+            header.getCountItem().set(sparse ? present : entryCount);
+            header.getEntriesStart().set(headerSize + offsetsSize);
+            header.setChunkSize(headerSize + offsetsSize + entriesSize);
+            byte[] bytes = new byte[header.getChunkSize()];
+            byte[] headerBytes = header.getBytes();
+            System.arraycopy(headerBytes, 0, bytes, 0, headerBytes.length);
+            int offset = headerSize;
+            for(int i = 0; i < entryCount; i++){
+                int entryOffset = offsets[i];
+                if(sparse){
+                    if(entryOffset == -1){
+                        continue;
+                    }
+                    Block.putShort(bytes, offset, i);
+                    Block.putShort(bytes, offset + 2, entryOffset / 4);
+                }else {
+                    Block.putInteger(bytes, offset, entryOffset);
+                }
+                offset += 4;
+            }
+            byte[] entryBytes = entries.toByteArray();
+            System.arraycopy(entryBytes, 0, bytes, headerSize + offsetsSize, entriesSize);
+            return bytes;
+        }
+    }
+    static class SpecRef {
+        final int source;
+        final int offset;
+        final SpecHeader header;
+        final int headerSize;
+        final int entryCount;
+
+        SpecRef(int source, int offset, SpecHeader header){
+            this.source = source;
+            this.offset = offset;
+            this.header = header;
+            this.headerSize = header.getHeaderSize();
+            this.entryCount = header.getEntryCount().get();
+        }
+    }
+    static class TypeRef {
+        final int source;
+        final int offset;
+        final TypeHeader header;
+        final boolean sparse;
+        final boolean offset16;
+
+        TypeRef(int source, int offset, TypeHeader header){
+            this.source = source;
+            this.offset = offset;
+            this.header = header;
+            this.sparse = header.isSparse();
+            this.offset16 = header.isOffset16();
+        }
+        int countEntries(BlockReader reader) throws IOException {
+            int count = header.getCountItem().get();
+            if(!sparse){
+                return count;
+            }
+            int result = 0;
+            for(int i = 0; i < count; i++){
+                result = Math.max(result, getEntryId(reader, i) + 1);
+            }
+            return result;
+        }
+        int getEntryId(BlockReader reader, int index) throws IOException {
+            if(sparse){
+                return getShortUnsigned(reader, offset + header.getHeaderSize() + index * 4);
+            }
+            return index;
+        }
+        /**
+         * Absolute position of entry in the source, or -1 if no entry
+         * */
+        int getEntryPosition(BlockReader reader, int index) throws IOException {
+            int start = offset + header.getHeaderSize();
+            int entryOffset;
+            if(sparse){
+                entryOffset = getShortUnsigned(reader, start + index * 4 + 2) * 4;
+            }else if(offset16){
+                entryOffset = getShortUnsigned(reader, start + index * 2);
+                if(entryOffset == 0xffff){
+                    return -1;
+                }
+                entryOffset = entryOffset * 4;
+            }else {
+                entryOffset = reader.getInteger(start + index * 4);
+                if(entryOffset == -1){
+                    return -1;
+                }
+            }
+            return offset + header.getEntriesStart().get() + entryOffset;
+        }
+    }
+
+    private static final int FLAG_COMPLEX = 0x0001;
+    private static final int FLAG_COMPACT = 0x0008;
+    private static final int TYPE_STRING = ValueType.STRING.getByte();
+}
@@ -60,6 +60,9 @@ public class BuildOptions extends OptionsWithFramework {
     @OptionArg(name = "-sig", description = "signatures_path")
     public File signaturesDirectory;
 
+    @OptionArg(name = "-j", description = "build_jobs")
+    public int jobs = 1;
+
     public BuildOptions() {
         super();
     }
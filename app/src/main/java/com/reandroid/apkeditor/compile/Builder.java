@@ -71,6 +71,7 @@ public class Builder extends CommandExecutor<BuildOptions> {
         BuildOptions options = getOptions();
 
         SmaliCompiler smaliCompiler = new SmaliCompiler(options.noCache);
+        smaliCompiler.setJobs(options.jobs);
         smaliCompiler.setApkLogger(this);
         encoder.setDexEncoder(smaliCompiler);
 
@@ -100,6 +101,7 @@ public class Builder extends CommandExecutor<BuildOptions> {
         BuildOptions options = getOptions();
 
         SmaliCompiler smaliCompiler = new SmaliCompiler(options.noCache);
+        smaliCompiler.setJobs(options.jobs);
         smaliCompiler.setApkLogger(this);
 
         encoder.setDexEncoder(smaliCompiler);
@@ -129,6 +131,7 @@ public class Builder extends CommandExecutor<BuildOptions> {
         }
 
         SmaliCompiler smaliCompiler = new SmaliCompiler(options.noCache);
+        smaliCompiler.setJobs(options.jobs);
         smaliCompiler.setApkLogger(this);
 
         encoder.setDexEncoder(smaliCompiler);
@@ -71,6 +71,9 @@ public class DecompileOptions extends OptionsWithFramework {
     @OptionArg(name = "-sig", description = "signatures_path")
     public File signaturesDirectory;
 
+    @OptionArg(name = "-j", description = "decode_jobs")
+    public int jobs = 1;
+
     public DecompileOptions() {
     }
 
@@ -25,7 +25,7 @@ import android.support.v4.content.FileProvider;
 import android.text.TextUtils;
 
 import com.abdurazaaqmohammed.AntiSplit.R;
-import com.abdurazaaqmohammed.AntiSplit.main.DeviceSpecsUtil;
+import com.abdurazaaqmohammed.AntiSplit.main.BundleIndex;
 import com.abdurazaaqmohammed.AntiSplit.main.MainActivity;
 import com.abdurazaaqmohammed.AntiSplit.main.MismatchedSplitsException;
 import com.abdurazaaqmohammed.AntiSplit.main.SignUtil;
@@ -34,6 +34,7 @@ import com.j256.simplezip.ZipFileInput;
 import com.j256.simplezip.format.ZipFileHeader;
 import com.reandroid.apk.ApkBundle;
 import com.reandroid.apk.ApkModule;
+import com.reandroid.apk.MergeCache;
 import com.reandroid.apkeditor.common.AndroidManifestHelper;
 import com.reandroid.app.AndroidManifest;
 import com.reandroid.archive.ArchiveFile;
@@ -72,6 +73,23 @@ public class Merger {
     private static void extractAndLoad(Uri in, File cacheDir, Context context, List<String> splits, ApkBundle bundle) throws IOException, MismatchedSplitsException, InterruptedException {
          logMessage(in.getPath());
         boolean checkSplits = splits != null && !splits.isEmpty();
+        // Same index as used when selecting splits, stored inner apks are read in place from it
+        ArchiveFile container = BundleIndex.get(in, context).getArchive(context);
+        if (container != null) {
+            try {
+                bundle.loadApkArchive(container, cacheDir, checkSplits ? splits : null, context);
+                return;
+            } catch (MismatchedSplitsException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // Nothing of the failed load is left in bundle or cache dir, extract all and load as files
+                logMessage("Could not load in place, extracting: " + e);
+            }
+            extractZipFile(container, checkSplits, splits, cacheDir);
+            bundle.loadApkDirectory(cacheDir, false, context);
+            return;
+        }
+        // Could not be opened as zip file, extract by streaming
         try (InputStream is = FileUtils.getInputStream(in, context);
              ZipFileInput zis = new ZipFileInput(is)) {
             ZipFileHeader header;
@@ -91,27 +109,8 @@ public class Merger {
                 } else
                     logMessage(MainActivity.rss.getString(R.string.skipping) + name + MainActivity.rss.getString(R.string.not_apk));
             }
-            bundle.loadApkDirectory(cacheDir, false, context);
-        } catch (MismatchedSplitsException m) {
-            throw new RuntimeException(m);
-        } catch (Exception e) {
-            // If the above failed it probably did not copy any files
-            // so might as well do it this way instead of trying unreliable methods to see if we need to do this
-            // and possibly copying the file for no reason
-
-            // Check if already copied the file earlier to get list of splits.
-            if (DeviceSpecsUtil.zipFile == null) {
-                File input = new File(FileUtils.getPath(in, context));
-                boolean couldNotRead = !input.canRead();
-                if (couldNotRead) try(InputStream is = context.getContentResolver().openInputStream(in)) {
-                    FileUtils.copyFile(is, input = new File(cacheDir, input.getName()));
-                }
-                ArchiveFile zf = new ArchiveFile(input);
-                extractZipFile(zf, checkSplits, splits, cacheDir);
-                if (couldNotRead) input.delete();
-            } else extractZipFile(DeviceSpecsUtil.zipFile, checkSplits, splits, cacheDir);
-            bundle.loadApkDirectory(cacheDir, false, context);
         }
+        bundle.loadApkDirectory(cacheDir, false, context);
     }
 
     private static void extractZipFile(ArchiveFile zf, boolean checkSplits, List<String> splits, File cacheDir) throws IOException {
@@ -120,29 +119,36 @@ public class Merger {
             if (name.endsWith(".apk")) {
                 if ((checkSplits && splits.contains(name)))
                     logMessage(MainActivity.rss.getString(R.string.skipping) + name + MainActivity.rss.getString(R.string.unselected));
-                else try (OutputStream os = FileUtils.getOutputStream(new File(cacheDir, name));
-                          InputStream is = archiveEntry.openStream()) {
-                    FileUtils.copyFile(is, os);
+                else {
+                    File file = new File(cacheDir, name);
+                    if (!file.getCanonicalPath().startsWith(cacheDir.getCanonicalPath() + File.separator))
+                        throw new IOException("Zip entry is outside of the target dir: " + name);
+                    try (OutputStream os = FileUtils.getOutputStream(file);
+                         InputStream is = archiveEntry.openStream()) {
+                        FileUtils.copyFile(is, os);
+                    }
+                    logMessage("Extracted " + name);
                 }
             } else
                 logMessage(MainActivity.rss.getString(R.string.skipping) + name + MainActivity.rss.getString(R.string.not_apk));
         }
     }
 
-    public static void run(ApkBundle bundle, File cacheDir, Uri out, Context context, boolean signApk) throws IOException, InterruptedException {
+    public static void run(ApkBundle bundle, File cacheDir, Uri out, Context context, boolean signApk, MergerOptions options) throws IOException, InterruptedException {
         logMessage("Found modules: " + bundle.getApkModuleList().size());
         final boolean[] saveToCacheDir = {false};
         final boolean[] sign = {signApk};
-        for(File split : cacheDir.listFiles()) {
-            String splitName = split.getName();
+        for(ApkModule split : bundle.getApkModuleList()) {
+            String splitName = split.getModuleName();
             String arch = null;
             String var = "x86";
             if(splitName.contains(var)) arch = var;
             else if(splitName.contains(var = "x86_64") || splitName.contains("x86-64") || splitName.contains("x64")) arch = var;
             else if(splitName.contains("arm64")) arch = "arm64-v8a";
             else if(splitName.contains("v7a") || splitName.contains("arm7")) arch = "armeabi-v7a";
-            if(arch != null) try (ApkModule zf = ApkModule.loadApkFile(split, splitName)) {
-                if (zf.containsFile("lib" + File.separator + arch + File.separator + "libpairipcore.so")) {
+            // Splits may be read in place from the bundle, check loaded modules rather than cache dir
+            if(arch != null) {
+                if (split.containsFile("lib/" + arch + "/libpairipcore.so")) {
                     final CountDownLatch latch = new CountDownLatch(1);
                     MainActivity act = ((MainActivity) context);
                     act.getHandler().post(() ->
@@ -162,7 +168,18 @@ public class Merger {
                 }
             }
         }
+        if (options.memoryBudget > 0) {
+            // Release merged splits early and merge huge tables through a temp file
+            bundle.setMemoryBudget(options.memoryBudget * 1024L * 1024L);
+        }
+        if (options.mergeCacheDir != null) {
+            // Re-merges only tables of changed splits on repeated merges of the same bundle
+            bundle.setMergeCache(new MergeCache(options.mergeCacheDir));
+        }
+        bundle.setThreadCount(options.jobs);
         try (ApkModule mergedModule = bundle.mergeModules()) {
+            mergedModule.setWriterThreadCount(options.jobs);
+            mergedModule.setCompressionPolicy(options.getCompressionPolicy());
             if (mergedModule.hasAndroidManifest()) {
                 AndroidManifestBlock manifest = mergedModule.getAndroidManifest();
                 logMessage(MainActivity.rss.getString(R.string.sanitizing_manifest));
@@ -206,6 +223,8 @@ public class Merger {
                                 if (valueAttribute != null
                                         && valueAttribute.getValueType() == ValueType.REFERENCE) {
                                     if (mergedModule.hasTableBlock()) {
+                                        // Parses the whole merged table even if it was merged through a
+                                        // temp file, a memory budget lowers the peak of merging only
                                         TableBlock tableBlock = mergedModule.getTableBlock();
                                         ResourceEntry resourceEntry = tableBlock.getResource(valueAttribute.getData());
                                         if (resourceEntry != null) {
@@ -245,19 +264,20 @@ public class Merger {
             }
             logMessage(MainActivity.rss.getString(R.string.saving));
 
-            File temp;
             if (sign[0]) {
-                mergedModule.writeApk(temp = new File(cacheDir, "temp.apk"));
                 logMessage(MainActivity.rss.getString(R.string.signing));
                 boolean saveToCache = MainActivity.doesNotHaveStoragePerm(context);
                 String p;
                 File signed = new File(saveToCache || (saveToCache = TextUtils.isEmpty(p = FileUtils.getPath(out, context))) ? (cacheDir + File.separator + "signed.apk") : p);
                 try {
-                    SignUtil.signDebugKey(context, temp, signed);
+                    // Signed while writing, no unsigned temp.apk to re-read
+                    SignUtil.writeSignedDebugKey(context, mergedModule, signed);
                     if (saveToCache) try(OutputStream os = context.getContentResolver().openOutputStream(signedApk = out)) {
                         FileUtils.copyFile(signed, os);
                     } else signedApk = FileProvider.getUriForFile(context, "com.abdurazaaqmohammed.AntiSplit.provider", signed);
                 } catch (Exception e) {
+                    File temp = new File(cacheDir, "temp.apk");
+                    mergedModule.writeApk(temp);
                     SignUtil.signPseudoApkSigner(temp, context, out, e);
                 }
             } else if (saveToCacheDir[0]) {
@@ -272,12 +292,12 @@ public class Merger {
 
     public static Uri signedApk;
 
-    public static void run(Uri in, File cacheDir, Uri out, Context context, List<String> splits, boolean signApk) throws Exception {
+    public static void run(Uri in, File cacheDir, Uri out, Context context, List<String> splits, boolean signApk, MergerOptions options) throws Exception {
         logMessage(com.abdurazaaqmohammed.AntiSplit.main.MainActivity.rss.getString(R.string.searching));
         try (ApkBundle bundle = new ApkBundle()) {
             if (in == null) bundle.loadApkDirectory(cacheDir, false, context); // Multiple splits from a split apk, already copied to cache dir
             else extractAndLoad(in, cacheDir, context, splits, bundle);
-            run(bundle, cacheDir, out, context, signApk);
+            run(bundle, cacheDir, out, context, signApk, options);
         }
     }
 }
\ No newline at end of file
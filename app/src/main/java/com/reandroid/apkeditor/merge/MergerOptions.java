@@ -16,6 +16,8 @@
 package com.reandroid.apkeditor.merge;
 
 import com.reandroid.apkeditor.Options;
+import com.reandroid.archive.writer.CompressionPolicy;
+import com.reandroid.jcommand.annotations.ChoiceArg;
 import com.reandroid.jcommand.annotations.CommandOptions;
 import com.reandroid.jcommand.annotations.OptionArg;
 
@@ -43,6 +45,27 @@ public class MergerOptions extends Options {
     @OptionArg(name = "-res-dir", description = "res_dir_name")
     public String resDirName;
 
+    @OptionArg(name = "-j", description = "merge_jobs")
+    public int jobs = 1;
+
+    // Megabytes, zero or negative is unlimited
+    @OptionArg(name = "-memory-budget", description = "merge_memory_budget")
+    public int memoryBudget;
+
+    @OptionArg(name = "-merge-cache", description = "merge_cache_dir")
+    public File mergeCacheDir;
+
+    @ChoiceArg(name = "-compression",
+            values = {
+                    COMPRESSION_DEFAULT,
+                    COMPRESSION_FASTEST,
+                    COMPRESSION_BALANCED,
+                    COMPRESSION_SMALLEST
+            },
+            description = "merge_compression"
+    )
+    public String compression = COMPRESSION_DEFAULT;
+
     public MergerOptions(){
         super();
     }
@@ -56,4 +79,21 @@ public class MergerOptions extends Options {
     public File generateOutputFromInput(File input) {
         return generateOutputFromInput(input, "_merged.apk");
     }
+    public CompressionPolicy getCompressionPolicy() {
+        if(COMPRESSION_FASTEST.equals(compression)) {
+            return CompressionPolicy.fastest();
+        }
+        if(COMPRESSION_BALANCED.equals(compression)) {
+            return CompressionPolicy.balanced();
+        }
+        if(COMPRESSION_SMALLEST.equals(compression)) {
+            return CompressionPolicy.smallest();
+        }
+        return CompressionPolicy.defaultPolicy();
+    }
+
+    public static final String COMPRESSION_DEFAULT = "default";
+    public static final String COMPRESSION_FASTEST = "fastest";
+    public static final String COMPRESSION_BALANCED = "balanced";
+    public static final String COMPRESSION_SMALLEST = "smallest";
 }
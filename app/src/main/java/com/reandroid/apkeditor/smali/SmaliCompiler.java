@@ -28,7 +28,9 @@ import com.reandroid.dex.model.DexFile;
 import com.reandroid.dex.sections.Marker;
 import com.reandroid.dex.sections.SectionType;
 import com.reandroid.dex.smali.SmaliReader;
+import com.reandroid.dex.smali.model.SmaliClass;
 import com.reandroid.utils.StringsUtil;
+import com.reandroid.utils.collection.CollectionUtil;
 import com.reandroid.utils.io.FileIterator;
 import com.reandroid.utils.io.IOUtil;
 import org.jf.dexlib2.extra.DexMarker;
@@ -37,17 +39,36 @@ import org.jf.smali.SmaliOptions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class SmaliCompiler implements DexEncoder {
     private APKLogger apkLogger;
     private final boolean noCache;
     private Integer minSdkVersion;
+    private int jobs = 1;
     public SmaliCompiler(boolean noCache){
         this.noCache = noCache;
     }
+    public int getJobs() {
+        return jobs;
+    }
+    /**
+     * Number of threads, classes directories are built concurrently and the remaining
+     * threads parse smali files of each directory. Output is the same for any value.
+     * */
+    public void setJobs(int jobs) {
+        if(jobs < 1){
+            jobs = 1;
+        }
+        this.jobs = jobs;
+    }
     @Override
     public List<InputSource> buildDexFiles(ApkModuleEncoder apkModuleEncoder, File mainDir) throws IOException {
         File smaliDir = new File(mainDir, "smali");
@@ -63,32 +84,52 @@ public class SmaliCompiler implements DexEncoder {
         }
         List<InputSource> results = new ArrayList<>();
         List<File> classesDirList = listClassesDirectories(smaliDir);
-        int i = 0;
         int size = classesDirList.size();
-        for(File classesDir : classesDirList){
-            i++;
-            String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
-            InputSource inputSource = build(progress, classesDir);
-            results.add(inputSource);
+        int dirJobs = Math.min(getJobs(), size);
+        if(dirJobs < 2){
+            int i = 0;
+            for(File classesDir : classesDirList){
+                i++;
+                String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
+                InputSource inputSource = build(progress, classesDir, getJobs());
+                results.add(inputSource);
+            }
+            return results;
+        }
+        int parseJobs = Math.max(1, getJobs() / dirJobs);
+        ExecutorService executor = Executors.newFixedThreadPool(dirJobs);
+        try {
+            List<Future<InputSource>> futureList = new ArrayList<>(size);
+            int i = 0;
+            for(File classesDir : classesDirList){
+                i++;
+                String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
+                futureList.add(executor.submit(() -> build(progress, classesDir, parseJobs)));
+            }
+            for(Future<InputSource> future : futureList){
+                results.add(await(future));
+            }
+        } finally {
+            executor.shutdownNow();
         }
         return results;
     }
-    private InputSource build(String progress, File classesDir) throws IOException {
+    private InputSource build(String progress, File classesDir, int parseJobs) throws IOException {
         File dexCacheFile = toDexCache(classesDir);
         if(isModified(classesDir, dexCacheFile)){
-            return build(progress, classesDir, dexCacheFile);
+            return build(progress, classesDir, dexCacheFile, parseJobs);
         }else {
             logMessage(progress + "Cached: " + dexCacheFile.getName());
             return new FileInputSource(dexCacheFile, dexCacheFile.getName());
         }
     }
-    private InputSource build(String progress, File classesDir, File dexCacheFile) throws IOException {
+    private InputSource build(String progress, File classesDir, File dexCacheFile, int parseJobs) throws IOException {
         if(APKEditor.isExperimental()) {
-            return buildExperimental(progress, classesDir, dexCacheFile);
+            return buildExperimental(progress, classesDir, dexCacheFile, parseJobs);
         }
-        return buildJesusFreke(progress, classesDir, dexCacheFile);
+        return buildJesusFreke(progress, classesDir, dexCacheFile, parseJobs);
     }
-    private InputSource buildJesusFreke(String progress, File classesDir, File dexCacheFile) throws IOException {
+    private InputSource buildJesusFreke(String progress, File classesDir, File dexCacheFile, int parseJobs) throws IOException {
         logMessage(progress + "Smali: " + dexCacheFile.getName());
         SmaliOptions smaliOptions = new SmaliOptions();
         File dir = dexCacheFile.getParentFile();
@@ -101,7 +142,7 @@ public class SmaliCompiler implements DexEncoder {
             smaliOptions.markersListFile = marker.getAbsolutePath();
         }
         if(smaliOptions.jobs <= 0){
-            smaliOptions.jobs = 1;
+            smaliOptions.jobs = parseJobs;
         }
         if (this.minSdkVersion != null) {
             smaliOptions.apiLevel = this.minSdkVersion;
@@ -112,18 +153,21 @@ public class SmaliCompiler implements DexEncoder {
         }
         return new FileInputSource(dexCacheFile, dexCacheFile.getName());
     }
-    private InputSource buildExperimental(String progress, File classesDir, File dexCacheFile) throws IOException {
+    private InputSource buildExperimental(String progress, File classesDir, File dexCacheFile, int parseJobs) throws IOException {
         logMessage(progress + "Smali: " + dexCacheFile.getName());
         DexFile dexFile = DexFile.createDefault();
         FileIterator fileIterator = new FileIterator(classesDir,
                 FileIterator.getExtensionFilter(".smali"));
-        while (fileIterator.hasNext()) {
-            File file = fileIterator.next();
-            try {
-                dexFile.fromSmali(SmaliReader.of(file));
-            } catch (Exception e) {
-                if (Build.VERSION.SDK_INT > 9) throw new IOException("Error at: " + file, e);
-                else throw new RuntimeException("Error at: " + file, e);
+        if(parseJobs > 1) {
+            parseSmali(dexFile, CollectionUtil.toList(fileIterator), parseJobs);
+        } else {
+            while (fileIterator.hasNext()) {
+                File file = fileIterator.next();
+                try {
+                    dexFile.fromSmali(SmaliReader.of(file));
+                } catch (Exception e) {
+                    throwBuildError(file, e);
+                }
             }
         }
         dexFile.refresh();
@@ -142,6 +186,64 @@ public class SmaliCompiler implements DexEncoder {
         dexFile.close();
         return new FileInputSource(dexCacheFile, dexCacheFile.getName());
     }
+    /**
+     * Parses smali files concurrently in batches, parsed classes are added to the dex file in the
+     * order of fileList so the result is the same as adding them one by one
+     * */
+    private void parseSmali(DexFile dexFile, List<File> fileList, int parseJobs) throws IOException {
+        int size = fileList.size();
+        int batch = parseJobs * PARSE_BATCH_PER_JOB;
+        ExecutorService executor = Executors.newFixedThreadPool(parseJobs);
+        try {
+            List<Future<SmaliClass>> futureList = new ArrayList<>(Math.min(batch, size));
+            for(int start = 0; start < size; start += batch) {
+                int end = Math.min(size, start + batch);
+                futureList.clear();
+                for(int i = start; i < end; i++) {
+                    File file = fileList.get(i);
+                    futureList.add(executor.submit(() -> {
+                        SmaliClass smaliClass = new SmaliClass();
+                        smaliClass.parse(SmaliReader.of(file));
+                        return smaliClass;
+                    }));
+                }
+                for(int i = start; i < end; i++) {
+                    File file = fileList.get(i);
+                    try {
+                        dexFile.fromSmali(await(futureList.get(i - start)));
+                    } catch (Exception e) {
+                        throwBuildError(file, e);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while building smali");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    private static void throwBuildError(File file, Exception e) throws IOException {
+        if (Build.VERSION.SDK_INT > 9) throw new IOException("Error at: " + file, e);
+        else throw new RuntimeException("Error at: " + file, e);
+    }
     private void readMarkers(DexFile dexFile, File classesDir) throws IOException {
         File markersFile = new File(classesDir, DexMarker.FILE_NAME);
         if(markersFile.isFile()){
@@ -215,6 +317,8 @@ public class SmaliCompiler implements DexEncoder {
         }
     }
 
+    private static final int PARSE_BATCH_PER_JOB = 128;
+
     public static int apiToDexVersion(int api) {
         if (api <= 23) {
             return 35;
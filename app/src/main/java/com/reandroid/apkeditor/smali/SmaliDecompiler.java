@@ -28,9 +28,11 @@ import com.reandroid.dex.key.TypeKey;
 import com.reandroid.dex.model.DexClassRepository;
 import com.reandroid.dex.model.DexDirectory;
 import com.reandroid.dex.model.DexFile;
+import com.reandroid.dex.model.DexFileSourceSet;
 import com.reandroid.dex.sections.SectionType;
 import com.reandroid.dex.smali.SmaliWriter;
 import com.reandroid.dex.smali.SmaliWriterSetting;
+import com.reandroid.dex.smali.formatters.HierarchyIndex;
 import com.reandroid.utils.CompareUtil;
 import com.reandroid.utils.collection.ArrayCollection;
 import org.jf.baksmali.Baksmali;
@@ -43,10 +45,14 @@ import org.jf.dexlib2.dexbacked.raw.HeaderItem;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SmaliDecompiler implements DexDecoder {
 
@@ -77,34 +83,48 @@ public class SmaliDecompiler implements DexDecoder {
     @Override
     public void decodeDex(ApkModule apkModule, File mainDirectory) throws IOException {
         if(!APKEditor.isExperimental()) {
-            DexDecoder.super.decodeDex(apkModule, mainDirectory);
+            List<DexFileInputSource> dexList = apkModule.listDexFiles();
+            if(getJobs() < 2 || dexList.size() < 2) {
+                DexDecoder.super.decodeDex(apkModule, mainDirectory);
+            }else {
+                disassembleJesusFreke(dexList, mainDirectory);
+            }
             return;
         }
         DexDirectory directory = (DexDirectory) apkModule.getTag(DexDirectory.class);
         if(directory == null) {
-            if(!canLoadFullDex(apkModule)) {
-                DexDecoder.super.decodeDex(apkModule, mainDirectory);
-                return;
-            }
-            logMessage("Loading full dex ...");
-            directory = DexDirectory.fromZip(apkModule.getZipEntryMap());
+            directory = loadDexDirectory(apkModule);
         }
         if(decompileOptions.noDexDebug) {
             logMessage("Clean debug info ...");
-            clearDebug_DirtyMethod(directory);
-            directory.refresh();
+            DexFileSourceSet sourceSet = directory.getDexSourceSet();
+            if(sourceSet.isLazy()) {
+                clearDebug_DirtyMethod(directory, sourceSet);
+            }else {
+                clearDebug_DirtyMethod(directory);
+                directory.refresh();
+            }
         }
 
         logMessage("Dumping smali ...");
         File smali = toSmaliRoot(mainDirectory);
         SmaliWriterSetting setting = new SmaliWriterSetting();
         setting.setResourceIdComment(tableBlock.pickOne());
-        setting.addClassComments(directory);
-        setting.addMethodComments(directory);
+        if(fitsMemoryBudget(apkModule, directory)) {
+            setting.addClassComments(directory);
+            setting.addMethodComments(directory);
+        }else {
+            // Comments look up every dex file per class, too slow when files keep getting evicted
+            logMessage("Indexing class hierarchy for comments ...");
+            HierarchyIndex hierarchyIndex = new HierarchyIndex();
+            hierarchyIndex.addAll(directory.getDexClasses());
+            setting.addClassComments(hierarchyIndex);
+            setting.addMethodComments(hierarchyIndex);
+        }
         SmaliWriter smaliWriter = new SmaliWriter();
         smaliWriter.setWriterSetting(setting);
         logMessage("Baksmali ...");
-        directory.writeSmali(smaliWriter, smali);
+        directory.writeSmali(smaliWriter, smali, getJobs());
         directory.close();
 
         List<DexFileInputSource> dexList = apkModule.listDexFiles();
@@ -112,20 +132,64 @@ public class SmaliDecompiler implements DexDecoder {
             writeDexCache(inputSource, mainDirectory);
         }
     }
-    private boolean canLoadFullDex(ApkModule apkModule) {
-        int CLASSES_LIMIT = 5;
+    private DexDirectory loadDexDirectory(ApkModule apkModule) throws IOException {
         int size = apkModule.listDexFiles().size();
         logMessage("Total dex files: " + size);
+        DexDirectory directory = new DexDirectory();
         if(size > CLASSES_LIMIT) {
-            logMessage("Huge classes your memory might not handle it, decoding separately without advanced features." +
-                    " You can disable this restrictions by increasing \"CLASSES_LIMIT\" variable here on source code");
-            return false;
+            long budget = Runtime.getRuntime().maxMemory() / 2;
+            logMessage("Huge classes, loading dex files on demand within " +
+                    (budget / (1024 * 1024)) + "MB");
+            directory.getDexSourceSet().setMemoryBudget(budget);
+            // Cleaned files are saved by saveModified, smali writing does not modify
+            directory.getDexSourceSet().setReadOnly(true);
         }
-        return true;
+        logMessage("Loading full dex ...");
+        directory.addApk(apkModule.getZipEntryMap());
+        return directory;
+    }
+    private boolean fitsMemoryBudget(ApkModule apkModule, DexDirectory directory) throws IOException {
+        DexFileSourceSet sourceSet = directory.getDexSourceSet();
+        if(!sourceSet.isLazy()) {
+            return true;
+        }
+        long length = 0;
+        for(DexFileInputSource inputSource : apkModule.listDexFiles()) {
+            length += inputSource.getLength();
+        }
+        return DexFileSourceSet.estimateMemory(length) <= sourceSet.getMemoryBudget();
     }
 
     private void disassembleJesusFreke(DexFileInputSource inputSource, File mainDir) throws IOException {
         File dir = toOutDir(inputSource, mainDir);
+        BaksmaliOptions options = newBaksmaliOptions();
+        DexBackedDexFile dexFile = getInputDexFile(inputSource, options);
+        Baksmali.disassembleDexFile(dexFile, dir, getJobs(), options);
+    }
+    /**
+     * Classes of all dex files are queued on one executor, so jobs are shared across dex files
+     * instead of waiting for each dex file to finish
+     * */
+    private void disassembleJesusFreke(List<DexFileInputSource> dexList, File mainDir) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(getJobs());
+        try {
+            List<Future<Boolean>> tasks = new ArrayList<>();
+            for(DexFileInputSource inputSource : dexList) {
+                logMessage("Baksmali: " + inputSource.getAlias());
+                File dir = toOutDir(inputSource, mainDir);
+                BaksmaliOptions options = newBaksmaliOptions();
+                DexBackedDexFile dexFile = getInputDexFile(inputSource, options);
+                tasks.addAll(Baksmali.submitDexFile(dexFile, dir, executor, options, null));
+            }
+            Baksmali.awaitAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+        for(DexFileInputSource inputSource : dexList) {
+            writeDexCache(inputSource, mainDir);
+        }
+    }
+    private BaksmaliOptions newBaksmaliOptions() {
         BaksmaliOptions options = new BaksmaliOptions();
         options.localsDirective = true;
         options.sequentialLabels = true;
@@ -133,11 +197,17 @@ public class SmaliDecompiler implements DexDecoder {
         options.debugInfo = !decompileOptions.noDexDebug;
         options.dumpMarkers = decompileOptions.dexMarkers;
         options.setCommentProvider(getComment());
-        DexBackedDexFile dexFile = getInputDexFile(inputSource, options);
-        Baksmali.disassembleDexFile(dexFile, dir, 1, options);
+        return options;
+    }
+    private int getJobs() {
+        int jobs = decompileOptions.jobs;
+        if(jobs < 1) {
+            jobs = 1;
+        }
+        return jobs;
     }
     private void disassembleDexFileExperimental(DexFileInputSource inputSource, File mainDir) throws IOException {
-        DexFile dexFile = DexFile.read(inputSource.openStream());
+        DexFile dexFile = DexFile.read(inputSource.openBlockReader());
         dexFile.setSimpleName(inputSource.getAlias());
         if(decompileOptions.noDexDebug) {
             logMessage("Clean debug info ...");
@@ -150,11 +220,36 @@ public class SmaliDecompiler implements DexDecoder {
         setting.addMethodComments(dexFile);
         SmaliWriter smaliWriter = new SmaliWriter();
         smaliWriter.setWriterSetting(setting);
-        dexFile.writeSmali(smaliWriter, toSmaliRoot(mainDir));
+        dexFile.writeSmali(smaliWriter, toSmaliRoot(mainDir), getJobs());
         dexFile.close();
     }
     private void clearDebug_DirtyMethod(DexClassRepository repository) {
         repository.clearDebug();
+        for(TypeKey typeKey : listRemovableAnnotations(repository)) {
+            logMessage("   Removed @: " + typeKey);
+            repository.removeAnnotations(typeKey);
+        }
+    }
+    /**
+     * Same result as on the whole directory, but each dex file is cleaned and saved to the
+     * lazy source set before it can be evicted
+     * */
+    private void clearDebug_DirtyMethod(DexDirectory directory, DexFileSourceSet sourceSet) throws IOException {
+        List<TypeKey> removedList = listRemovableAnnotations(directory);
+        for(TypeKey typeKey : removedList) {
+            logMessage("   Removed @: " + typeKey);
+        }
+        Iterator<DexFile> iterator = sourceSet.getClonedDexFiles();
+        while (iterator.hasNext()) {
+            DexFile dexFile = iterator.next();
+            dexFile.clearDebug();
+            for(TypeKey typeKey : removedList) {
+                dexFile.removeAnnotations(typeKey);
+            }
+            sourceSet.saveModified(dexFile);
+        }
+    }
+    private List<TypeKey> listRemovableAnnotations(DexClassRepository repository) {
         Set<TypeKey> removeSet = new HashSet<>();
         Iterator<AnnotationItem> iterator = repository.getItems(SectionType.ANNOTATION_ITEM);
         while (iterator.hasNext()) {
@@ -167,10 +262,7 @@ public class SmaliDecompiler implements DexDecoder {
         }
         List<TypeKey> removedList = new ArrayCollection<>(removeSet);
         removedList.sort(CompareUtil.getComparableComparator());
-        for(TypeKey typeKey : removedList) {
-            logMessage("   Removed @: " + typeKey);
-            repository.removeAnnotations(typeKey);
-        }
+        return removedList;
     }
     private boolean removeAnnotation(TypeKey typeKey) {
         String name = typeKey.getTypeName();
@@ -245,4 +337,6 @@ public class SmaliDecompiler implements DexDecoder {
             apkLogger.logMessage(msg);
         }
     }
+
+    private static final int CLASSES_LIMIT = 5;
 }
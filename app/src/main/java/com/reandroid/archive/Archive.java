@@ -31,8 +31,6 @@ import com.reandroid.utils.io.IOUtil;
 import java.io.*;
 import java.util.*;
 import java.util.function.Predicate;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 public abstract class Archive<T extends ZipInput> implements Closeable {
 
@@ -42,12 +40,19 @@ public abstract class Archive<T extends ZipInput> implements Closeable {
     private final ApkSignatureBlock apkSignatureBlock;
 
     public Archive(T zipInput) throws IOException {
+        this(zipInput, false);
+    }
+    /**
+     * @param lazy if true, entries are built from central directory only and local file
+     *             headers are read on first access, see {@link ArchiveEntry#getLocalFileHeader()}
+     * */
+    public Archive(T zipInput, boolean lazy) throws IOException {
         this.zipInput = zipInput;
         CentralFileDirectory cfd = new CentralFileDirectory();
         cfd.visit(zipInput);
         this.endRecord = cfd.getEndRecord();
         LocalFileDirectory lfd = new LocalFileDirectory(cfd);
-        lfd.visit(zipInput);
+        lfd.visit(zipInput, lazy);
         this.entryList  = lfd.buildArchiveEntryList();
         this.apkSignatureBlock = lfd.getApkSigBlock();
     }
@@ -117,8 +122,7 @@ public abstract class Archive<T extends ZipInput> implements Closeable {
         if(!archiveEntry.isCompressed()){
             return rawInputStream;
         }
-        return new InflaterInputStream(rawInputStream,
-                new Inflater(true), 1024*1000);
+        return ZipCodecPool.openInflaterStream(rawInputStream);
     }
     public Iterator<ArchiveEntry> getFiles() {
         return iterator(ArchiveEntry::isFile);
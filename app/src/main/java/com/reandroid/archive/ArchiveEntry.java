@@ -17,13 +17,31 @@ package com.reandroid.archive;
 
 import com.reandroid.archive.block.CentralEntryHeader;
 import com.reandroid.archive.block.LocalFileHeader;
+import com.reandroid.archive.io.ZipInput;
+import com.reandroid.archive.model.LocalFileDirectory;
 import com.reandroid.utils.HexUtil;
 import com.reandroid.utils.io.FilePermissions;
 
+import java.io.IOException;
+
 public class ArchiveEntry {
-    private final LocalFileHeader localFileHeader;
+    private volatile LocalFileHeader localFileHeader;
+    private final CentralEntryHeader centralEntryHeader;
+    private final int index;
+    private ZipInput zipInput;
     public ArchiveEntry(LocalFileHeader lfh){
         this.localFileHeader = lfh;
+        this.centralEntryHeader = null;
+        this.index = lfh.getIndex();
+    }
+    /**
+     * Entry built only from central directory, local file header is read from
+     * zipInput on first access
+     * */
+    public ArchiveEntry(CentralEntryHeader ceh, ZipInput zipInput, int index){
+        this.centralEntryHeader = ceh;
+        this.zipInput = zipInput;
+        this.index = index;
     }
     public long getDataSize(){
         if(getMethod() != Archive.DEFLATED){
@@ -36,48 +54,80 @@ public class ArchiveEntry {
         return getMethod() == Archive.DEFLATED;
     }
     public int getMethod(){
-        return localFileHeader.getMethod();
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            return centralEntryHeader.getMethod();
+        }
+        return lfh.getMethod();
     }
     public void setMethod(int method){
-        localFileHeader.setMethod(method);
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh != null){
+            lfh.setMethod(method);
+        }
         getCentralEntryHeader().setMethod(method);
     }
     public long getSize() {
-        return localFileHeader.getSize();
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            return centralEntryHeader.getSize();
+        }
+        return lfh.getSize();
     }
     public void setSize(long size) {
-        localFileHeader.setSize(size);
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh != null){
+            lfh.setSize(size);
+        }
         getCentralEntryHeader().setSize(size);
     }
     public long getCrc() {
-        return localFileHeader.getCrc();
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            return centralEntryHeader.getCrc();
+        }
+        return lfh.getCrc();
     }
     public void setCrc(long crc) {
-        localFileHeader.setCrc(crc);
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh != null){
+            lfh.setCrc(crc);
+        }
         getCentralEntryHeader().setCrc(crc);
     }
     public long getCompressedSize() {
-        return localFileHeader.getCompressedSize();
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            return centralEntryHeader.getCompressedSize();
+        }
+        return lfh.getCompressedSize();
     }
     public void setCompressedSize(long csize) {
-        localFileHeader.setCompressedSize(csize);
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh != null){
+            lfh.setCompressedSize(csize);
+        }
         getCentralEntryHeader().setCompressedSize(csize);
     }
-    public long getFileOffset() {
-        return localFileHeader.getFileOffset();
+    public long getFileOffset() throws IOException {
+        return getLocalFileHeader().getFileOffset();
     }
     public String getName(){
-        return localFileHeader.getFileName();
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            return centralEntryHeader.getFileName();
+        }
+        return lfh.getFileName();
     }
     public String getSanitizedName(){
-        String name = ArchiveUtil.sanitizePath(localFileHeader.getFileName());
+        String name = ArchiveUtil.sanitizePath(getName());
         if(name == null){
-            name = ".error_file_path_" + localFileHeader.getIndex();
+            name = ".error_file_path_" + index;
         }
         return name;
     }
-    public void setName(String name){
-        localFileHeader.setFileName(name);
+    public void setName(String name) throws IOException {
+        getLocalFileHeader().setFileName(name);
         getCentralEntryHeader().setFileName(name);
     }
     public String getComment(){
@@ -96,6 +146,10 @@ public class ArchiveEntry {
         return getCentralEntryHeader().getFilePermissions();
     }
     public CentralEntryHeader getCentralEntryHeader(){
+        LocalFileHeader localFileHeader = this.localFileHeader;
+        if(localFileHeader == null){
+            return centralEntryHeader;
+        }
         CentralEntryHeader ceh = localFileHeader.getCentralEntryHeader();
         if(ceh == null){
             ceh = CentralEntryHeader.fromLocalFileHeader(localFileHeader);
@@ -103,13 +157,50 @@ public class ArchiveEntry {
         }
         return ceh;
     }
-    public LocalFileHeader getLocalFileHeader() {
+    /**
+     * Local file header, read from archive if this entry was built from central directory only.
+     * Method, sizes and crc set before that are taken from central directory
+     * */
+    public LocalFileHeader getLocalFileHeader() throws IOException {
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            lfh = resolveLocalFileHeader();
+        }
+        return lfh;
+    }
+    /**
+     * @return local file header if already read, otherwise null
+     * */
+    public LocalFileHeader getResolvedLocalFileHeader() {
         return localFileHeader;
     }
+    public boolean isLocalFileHeaderResolved() {
+        return localFileHeader != null;
+    }
+    /**
+     * Reads local file header if this entry was built from central directory only,
+     * data offset is unknown until then
+     * */
+    public synchronized LocalFileHeader resolveLocalFileHeader() throws IOException {
+        LocalFileHeader lfh = this.localFileHeader;
+        if(lfh == null){
+            lfh = LocalFileDirectory.readLocalFileHeader(zipInput, centralEntryHeader);
+            setResolved(lfh);
+        }
+        return lfh;
+    }
+    private synchronized void setResolved(LocalFileHeader lfh) {
+        if(this.localFileHeader != null){
+            return;
+        }
+        lfh.setIndex(index);
+        this.localFileHeader = lfh;
+        this.zipInput = null;
+    }
     public long getDosTime(){
         return getCentralEntryHeader().getDosTime();
     }
-    public void setDosTime(long dosTime){
+    public void setDosTime(long dosTime) throws IOException {
         getCentralEntryHeader().setDosTime(dosTime);
         getLocalFileHeader().setDosTime(dosTime);
     }
@@ -118,7 +209,10 @@ public class ArchiveEntry {
     }
     @Override
     public String toString(){
-        return "["+ getFileOffset()+"] " + getName() + getComment()
+        // toString does not read the archive, data offset of unresolved entry is unknown
+        LocalFileHeader lfh = this.localFileHeader;
+        String offset = lfh != null ? Long.toString(lfh.getFileOffset()) : "?";
+        return "["+ offset +"] " + getName() + getComment()
                 + HexUtil.toHex(" 0x", getCrc(), 8);
     }
 }
@@ -33,7 +33,24 @@ public class ArchiveFile extends Archive<ZipFileInput>{
     public ArchiveFile(File file) throws IOException {
         this(new ZipFileInput(file));
     }
+    public ArchiveFile(ZipFileInput zipInput, boolean lazy) throws IOException {
+        super(zipInput, lazy);
+    }
+    public ArchiveFile(File file, boolean lazy) throws IOException {
+        this(new ZipFileInput(file), lazy);
+    }
 
+    /**
+     * Returns input reading stored (uncompressed) entry in place, without extracting.
+     * The returned input shares file channel of this archive
+     * */
+    public ZipFileInput openStoredEntry(ArchiveEntry archiveEntry) throws IOException {
+        if(archiveEntry.getMethod() != Archive.STORED){
+            throw new ArchiveException("Entry is not stored: " + archiveEntry.getName());
+        }
+        return new ZipFileInput(getZipInput(),
+                archiveEntry.getFileOffset(), archiveEntry.getDataSize());
+    }
     @Override
     InputSource createInputSource(ArchiveEntry entry) {
         return new ArchiveFileEntrySource(getZipInput(), entry);
@@ -42,16 +59,15 @@ public class ArchiveFile extends Archive<ZipFileInput>{
     void extractStored(File file, ArchiveEntry archiveEntry) throws IOException {
         FileUtil.createNewFile(file);
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            extractStored(archiveEntry, FileChannel.open(file.toPath(), StandardOpenOption.WRITE));
-        } else try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            try (FileChannel outputChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                extractStored(archiveEntry, outputChannel);
+            }
+        } else try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
             extractStored(archiveEntry, raf.getChannel());
         }
     }
     void extractStored(ArchiveEntry archiveEntry, FileChannel outputChannel) throws IOException {
-        try (FileChannel fileChannel = getZipInput().getFileChannel()) {
-            fileChannel.position(archiveEntry.getFileOffset());
-            outputChannel.transferFrom(fileChannel, 0, archiveEntry.getDataSize());
-            outputChannel.close();
-        }
+        getZipInput().transferTo(archiveEntry.getFileOffset(),
+                archiveEntry.getDataSize(), outputChannel);
     }
 }
@@ -173,7 +173,15 @@ public class ArchiveInfo implements HeaderInterceptor, JSONConvert<JSONObject> {
 
         info.setDosTime(entry.getDosTime());
         info.setCehVersionMadeBy(entry.getCentralEntryHeader().getVersionMadeBy());
-        info.setLfhVersionMadeBy(entry.getLocalFileHeader().getVersionMadeBy());
+        LocalFileHeader lfh = entry.getResolvedLocalFileHeader();
+        int lfhVersion;
+        if(lfh != null){
+            lfhVersion = lfh.getVersionMadeBy();
+        }else {
+            // Same field as version to extract of central directory, no need to read the header
+            lfhVersion = entry.getCentralEntryHeader().getVersionExtract();
+        }
+        info.setLfhVersionMadeBy(lfhVersion);
         info.setVersionExtract(entry.getCentralEntryHeader().getVersionExtract());
         return info;
     }
@@ -17,8 +17,10 @@ package com.reandroid.archive;
 
 import android.text.TextUtils;
 
+import com.reandroid.archive.io.ZipCodecPool;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
+import com.reandroid.arsc.io.BlockReader;
 import com.reandroid.utils.CRCDigest;
 import com.reandroid.utils.CompareUtil;
 import com.reandroid.utils.StringsUtil;
@@ -129,11 +131,15 @@ public abstract class InputSource {
     }
     private long write(OutputStream outputStream, InputStream inputStream) throws IOException {
         long result=0;
-        byte[] buffer=new byte[1024 * 1000];
-        int len;
-        while ((len=inputStream.read(buffer))>0){
-            outputStream.write(buffer, 0, len);
-            result+=len;
+        byte[] buffer = ZipCodecPool.obtainBuffer();
+        try {
+            int len;
+            while ((len=inputStream.read(buffer))>0){
+                outputStream.write(buffer, 0, len);
+                result+=len;
+            }
+        } finally {
+            ZipCodecPool.releaseBuffer(buffer);
         }
         close(inputStream);
         return result;
@@ -154,6 +160,15 @@ public abstract class InputSource {
         return mCrc;
     }
     public abstract InputStream openStream() throws IOException;
+    /**
+     * Reader of whole content for parsing blocks (e.g. resources.arsc, dex)
+     * */
+    public BlockReader openBlockReader() throws IOException {
+        InputStream inputStream = openStream();
+        BlockReader reader = new BlockReader(inputStream);
+        inputStream.close();
+        return reader;
+    }
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -178,10 +193,14 @@ public abstract class InputSource {
         long length=0;
         CRCDigest crc = new CRCDigest();
         int bytesRead;
-        byte[] buffer = new byte[1024*64];
-        while((bytesRead = inputStream.read(buffer)) != -1) {
-            crc.update(buffer, 0, bytesRead);
-            length+=bytesRead;
+        byte[] buffer = ZipCodecPool.obtainBuffer();
+        try {
+            while((bytesRead = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, bytesRead);
+                length+=bytesRead;
+            }
+        } finally {
+            ZipCodecPool.releaseBuffer(buffer);
         }
         close(inputStream);
         mCrc=crc.getValue();
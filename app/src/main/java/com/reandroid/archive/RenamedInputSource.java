@@ -15,6 +15,8 @@
   */
 package com.reandroid.archive;
 
+import com.reandroid.arsc.io.BlockReader;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -68,4 +70,8 @@ public class RenamedInputSource<T extends InputSource> extends InputSource {
     public InputStream openStream() throws IOException {
         return getInputSource().openStream();
     }
+    @Override
+    public BlockReader openBlockReader() throws IOException {
+        return getInputSource().openBlockReader();
+    }
 }
@@ -18,6 +18,7 @@ package com.reandroid.archive.io;
 import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils;
 import com.reandroid.archive.Archive;
 import com.reandroid.archive.ArchiveEntry;
+import com.reandroid.arsc.io.BlockReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -35,27 +36,28 @@ public class ArchiveFileEntrySource extends ArchiveEntrySource<ZipFileInput> {
 
     @Override
     public byte[] getBytes(int length) throws IOException {
-        FileChannel fileChannel = getFileChannel();
-        if(getMethod() != Archive.STORED || fileChannel == null){
+        if(!isStoredEntry()){
             return super.getBytes(length);
         }
         byte[] bytes = new byte[length];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-        fileChannel.read(byteBuffer);
+        getZipSource().read(ByteBuffer.wrap(bytes), getArchiveEntry().getFileOffset());
         return bytes;
     }
 
-    FileChannel getFileChannel() throws IOException {
+    @Override
+    public BlockReader openBlockReader() throws IOException {
         ZipFileInput zipInput = getZipSource();
-        FileChannel fileChannel = zipInput.getFileChannel();
-        fileChannel.position(getArchiveEntry().getFileOffset());
-        return fileChannel;
+        long length = getLength();
+        if(!isStoredEntry() || !zipInput.isMemoryMapping()
+                || length < MAP_MIN_LENGTH || length > Integer.MAX_VALUE){
+            return super.openBlockReader();
+        }
+        return new BlockReader(zipInput.map(getArchiveEntry().getFileOffset(), length));
     }
 
     @Override
     public void write(File file) throws IOException {
-        FileChannel fileChannel = getFileChannel();
-        if(getMethod() != Archive.STORED || fileChannel == null){
+        if(!isStoredEntry()){
             super.write(file);
             return;
         }
@@ -63,14 +65,23 @@ public class ArchiveFileEntrySource extends ArchiveEntrySource<ZipFileInput> {
         if(dir != null && !dir.exists()) dir.mkdirs();
         if(file.isFile()) file.delete();
         file.createNewFile();
-        if (LegacyUtils.supportsFileChannel) write(fileChannel, FileChannel.open(file.toPath(), StandardOpenOption.WRITE));
-        else try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            write(fileChannel, raf.getChannel());
+        if (LegacyUtils.supportsFileChannel) try (FileChannel outputChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            write(outputChannel);
+        } else try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            write(raf.getChannel());
         }
     }
 
-    private void write(FileChannel fileChannel, FileChannel outputChannel) throws IOException {
-        outputChannel.transferFrom(fileChannel, 0, getLength());
-        outputChannel.close();
+    /**
+     * Method of the entry as stored in the archive, {@link #getMethod()} is the method for
+     * writing and may have been changed (e.g. by UncompressedFiles)
+     * */
+    private boolean isStoredEntry() {
+        return getArchiveEntry().getMethod() == Archive.STORED;
     }
-}
\ No newline at end of file
+    private void write(FileChannel outputChannel) throws IOException {
+        getZipSource().transferTo(getArchiveEntry().getFileOffset(), getLength(), outputChannel);
+    }
+
+    private static final long MAP_MIN_LENGTH = 64 * 1024;
+}
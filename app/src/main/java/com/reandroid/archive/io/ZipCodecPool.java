@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Bounded pools of raw (nowrap) inflaters/deflaters and i/o buffers shared by archive
+ * readers and writers. Each inflater/deflater holds native zlib memory which otherwise
+ * lingers until finalization, thus callers should release what they obtain.
+ * */
+public class ZipCodecPool {
+
+    private static final ArrayDeque<Deflater> DEFLATERS = new ArrayDeque<>();
+    private static final ArrayDeque<Inflater> INFLATERS = new ArrayDeque<>();
+    private static final ArrayDeque<byte[]> BUFFERS = new ArrayDeque<>();
+
+    public static Deflater obtainDeflater(int level, int strategy){
+        Deflater deflater;
+        synchronized (DEFLATERS){
+            deflater = DEFLATERS.poll();
+        }
+        if(deflater == null){
+            deflater = new Deflater(level, true);
+        }else {
+            deflater.setLevel(level);
+        }
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+    public static void releaseDeflater(Deflater deflater){
+        if(deflater == null){
+            return;
+        }
+        deflater.reset();
+        synchronized (DEFLATERS){
+            if(DEFLATERS.size() < MAX_IDLE){
+                DEFLATERS.push(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+    public static Inflater obtainInflater(){
+        Inflater inflater;
+        synchronized (INFLATERS){
+            inflater = INFLATERS.poll();
+        }
+        if(inflater == null){
+            inflater = new Inflater(true);
+        }
+        return inflater;
+    }
+    public static void releaseInflater(Inflater inflater){
+        if(inflater == null){
+            return;
+        }
+        inflater.reset();
+        synchronized (INFLATERS){
+            if(INFLATERS.size() < MAX_IDLE){
+                INFLATERS.push(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+    /**
+     * @return buffer of {@link #BUFFER_SIZE} bytes, contents are not cleared
+     * */
+    public static byte[] obtainBuffer(){
+        byte[] buffer;
+        synchronized (BUFFERS){
+            buffer = BUFFERS.poll();
+        }
+        if(buffer == null){
+            buffer = new byte[BUFFER_SIZE];
+        }
+        return buffer;
+    }
+    public static void releaseBuffer(byte[] buffer){
+        if(buffer == null || buffer.length != BUFFER_SIZE){
+            return;
+        }
+        synchronized (BUFFERS){
+            if(BUFFERS.size() < MAX_IDLE){
+                BUFFERS.push(buffer);
+            }
+        }
+    }
+    /**
+     * Inflates raw deflate data of the given stream, the inflater and buffer are returned
+     * to pool once the stream is closed
+     * */
+    public static InputStream openInflaterStream(InputStream inputStream){
+        return new PooledInflaterInputStream(inputStream);
+    }
+
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean released;
+
+        PooledInflaterInputStream(InputStream inputStream){
+            super(inputStream, obtainInflater(), 1);
+            this.buf = obtainBuffer();
+        }
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+        private void release(){
+            if(released){
+                return;
+            }
+            released = true;
+            releaseInflater(this.inf);
+            releaseBuffer(this.buf);
+        }
+    }
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_IDLE = Math.max(2, Runtime.getRuntime().availableProcessors());
+}
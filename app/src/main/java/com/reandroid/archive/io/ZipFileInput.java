@@ -20,45 +20,117 @@ import com.reandroid.common.FileChannelInputStream;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.StandardOpenOption;
 
 
+/**
+ * Reads zip file through positional reads of a single shared {@link FileChannel},
+ * streams returned by {@link #getInputStream(long, long)} are independent of each other
+ * and can be consumed concurrently.
+ * The input may cover only a region of the file (e.g. stored apk entry inside xapk),
+ * all offsets are then relative to the start of that region.
+ * */
 public class ZipFileInput extends ZipInput {
     private final File file;
-    private FileChannel fileChannel;
-    private InputStream mCurrentInputStream;
-    public ZipFileInput(File file){
+    private final ZipFileInput parent;
+    private final long baseOffset;
+    private final long length;
+    private volatile FileChannel fileChannel;
+    private boolean memoryMapping;
+    private ZipFileInput(File file, ZipFileInput parent, long offset, long length){
         this.file = file;
+        this.parent = parent;
+        this.baseOffset = offset;
+        this.length = length;
+        this.memoryMapping = parent != null && parent.isMemoryMapping();
+    }
+    /**
+     * Region of parent input, reads through channel of parent thus closing this input
+     * does not close the parent
+     * */
+    public ZipFileInput(ZipFileInput parent, long offset, long length){
+        this(parent.file, parent, parent.baseOffset + offset, length);
+    }
+    public ZipFileInput(File file){
+        this(file, null, 0, -1);
     }
 
     public File getFile(){
         return file;
     }
+    public boolean isMemoryMapping() {
+        return memoryMapping;
+    }
+    /**
+     * If enabled, large stored entries are parsed directly from memory mapped file
+     * instead of being copied to heap, see {@link #map(long, long)}. Disabled by default,
+     * a mapping can not be released explicitly and stays until garbage collected.
+     * Regions of this input created afterwards inherit the value
+     * */
+    public void setMemoryMapping(boolean memoryMapping) {
+        this.memoryMapping = memoryMapping;
+    }
+    /**
+     * Maps the given region read only, bytes are not copied to heap and the mapping stays
+     * valid even after this input is closed
+     * */
+    public ByteBuffer map(long offset, long length) throws IOException {
+        ByteBuffer buffer = getFileChannel().map(FileChannel.MapMode.READ_ONLY,
+                baseOffset + offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
 
+    /**
+     * All reads are positional, this input has no cursor of its own
+     * */
     @Override
     public long position() throws IOException {
-        FileChannel fileChannel = this.fileChannel;
-        if(fileChannel != null){
-            return fileChannel.position();
-        }
         return 0;
     }
     @Override
     public void position(long pos) throws IOException {
-        getFileChannel().position(pos);
+        throw new IOException("Can not move position of ZipFileInput, reads are positional");
     }
     @Override
     public long getLength(){
-        return this.file.length();
+        long length = this.length;
+        if(length < 0){
+            length = this.file.length();
+        }
+        return length;
     }
     @Override
     public InputStream getInputStream(long offset, long length) throws IOException {
-        closeCurrentInputStream();
+        return new FileChannelInputStream(getFileChannel(), baseOffset + offset, length);
+    }
+    public void read(ByteBuffer buffer, long offset) throws IOException {
         FileChannel fileChannel = getFileChannel();
-        fileChannel.position(offset);
-        mCurrentInputStream = new FileChannelInputStream(fileChannel, length);
-        return mCurrentInputStream;
+        offset = baseOffset + offset;
+        while (buffer.hasRemaining()){
+            int read = fileChannel.read(buffer, offset);
+            if(read < 0){
+                throw new EOFException("Unexpected end of file: " + file
+                        + ", offset = " + offset);
+            }
+            offset += read;
+        }
+    }
+    public void transferTo(long offset, long length, WritableByteChannel target) throws IOException {
+        FileChannel fileChannel = getFileChannel();
+        offset = baseOffset + offset;
+        while (length > 0){
+            long count = fileChannel.transferTo(offset, length, target);
+            if(count <= 0){
+                throw new EOFException("Unexpected end of file: " + file
+                        + ", offset = " + offset);
+            }
+            offset += count;
+            length -= count;
+        }
     }
 
     @Override
@@ -68,16 +140,19 @@ public class ZipFileInput extends ZipInput {
             minLength = (int) position;
         }
         position = position - minLength;
-        FileChannel fileChannel = getFileChannel();
-        fileChannel.position(position);
         ByteBuffer buffer = ByteBuffer.allocate(minLength);
-        fileChannel.read(buffer);
+        read(buffer, position);
         return buffer.array();
     }
     public FileChannel getFileChannel() throws IOException {
+        if(parent != null){
+            return parent.getFileChannel();
+        }
         FileChannel fileChannel = this.fileChannel;
         if(fileChannel != null) return fileChannel;
         synchronized (this){
+            fileChannel = this.fileChannel;
+            if(fileChannel != null) return fileChannel;
             if(!file.isFile()) throw new FileNotFoundException("No such file: " + file);
             fileChannel = LegacyUtils.supportsFileChannel ?
                     FileChannel.open(this.file.toPath(), StandardOpenOption.READ) :
@@ -88,11 +163,13 @@ public class ZipFileInput extends ZipInput {
     }
     @Override
     public void close() throws IOException {
-        closeCurrentInputStream();
         closeChannel();
     }
     @Override
     public boolean isOpen(){
+        if(parent != null){
+            return parent.isOpen();
+        }
         FileChannel fileChannel = this.fileChannel;
         if(fileChannel == null){
             return false;
@@ -111,16 +188,11 @@ public class ZipFileInput extends ZipInput {
             this.fileChannel = null;
         }
     }
-    private void closeCurrentInputStream() throws IOException {
-        InputStream current = this.mCurrentInputStream;
-        if(current == null){
-            return;
-        }
-        current.close();
-        mCurrentInputStream = null;
-    }
     @Override
     public String toString(){
+        if(length >= 0){
+            return "File: " + this.file + ", offset = " + baseOffset + ", length = " + length;
+        }
         return "File: " + this.file;
     }
 }
@@ -37,6 +37,12 @@ public class ZipFileOutput extends ZipOutput{
     public File getFile() {
         return file;
     }
+    public void write(ZipFileInput input, long offset, long length) throws IOException{
+        FileChannel fileChannel = getFileChannel();
+        long pos = fileChannel.position();
+        input.transferTo(offset, length, fileChannel);
+        fileChannel.position(pos + length);
+    }
     public void write(FileChannel input, long length) throws IOException{
         FileChannel fileChannel = getFileChannel();
         long pos = fileChannel.position();
@@ -83,14 +89,20 @@ public class ZipFileOutput extends ZipOutput{
     public void write(InputStream inputStream) throws IOException {
         FileChannel fileChannel = getFileChannel();
         long pos = fileChannel.position();
-        int bufferLength = 1024 * 1000 * 10;
-        byte[] buffer = new byte[bufferLength];
+        byte[] buffer = ZipCodecPool.obtainBuffer();
+        int bufferLength = buffer.length;
         long result = 0;
-        int read;
-        while ((read = inputStream.read(buffer, 0, bufferLength)) > 0){
-            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
-            fileChannel.write(byteBuffer);
-            result += read;
+        try {
+            int read;
+            while ((read = inputStream.read(buffer, 0, bufferLength)) > 0){
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()){
+                    fileChannel.write(byteBuffer);
+                }
+                result += read;
+            }
+        } finally {
+            ZipCodecPool.releaseBuffer(buffer);
         }
         inputStream.close();
         fileChannel.position(pos + result);
@@ -31,12 +31,24 @@ public class LocalFileDirectory {
     private final CentralFileDirectory centralFileDirectory;
     private final List<LocalFileHeader> headerList;
     private ApkSignatureBlock apkSignatureBlock;
+    private ZipInput lazyInput;
     public LocalFileDirectory(CentralFileDirectory centralFileDirectory){
         this.centralFileDirectory = centralFileDirectory;
         this.headerList = new ArrayList<>(centralFileDirectory.count() + 2);
     }
     public void visit(ZipInput zipInput) throws IOException {
-        visitLocalFile(zipInput);
+        visit(zipInput, false);
+    }
+    /**
+     * @param lazy if true, local file headers are not read here, entries are built from
+     *             central directory and resolve their local header on first access
+     * */
+    public void visit(ZipInput zipInput, boolean lazy) throws IOException {
+        if(lazy){
+            this.lazyInput = zipInput;
+        }else {
+            visitLocalFile(zipInput);
+        }
         visitApkSigBlock(zipInput);
     }
     private void visitLocalFile(ZipInput zipInput) throws IOException {
@@ -50,26 +62,7 @@ public class LocalFileDirectory {
             offset = ceh.getLocalRelativeOffset();
             inputStream.reset();
             offset = inputStream.skip(offset);
-            LocalFileHeader lfh = LocalFileHeader.read(inputStream);
-            if(lfh == null){
-                throw new ArchiveException("Error reading LFH at "
-                        + offset + ", for CEH = " + ceh.getFileName());
-            }
-            offset = offset + lfh.countBytes();
-            ceh.setFileOffset(offset);
-
-            lfh.setCentralEntryHeader(ceh);
-
-            inputStream.skip(lfh.getDataSize());
-
-            lfh.updateDataDescriptor();
-            DataDescriptor dataDescriptor = lfh.getDataDescriptor();
-            if(dataDescriptor != null) {
-                int read = dataDescriptor.readBytes(inputStream);
-                if(read != dataDescriptor.countBytes()) {
-                    lfh.setHasDataDescriptor(false);
-                }
-            }
+            LocalFileHeader lfh = readLocalFileHeader(inputStream, offset, ceh);
             lfh.setIndex(index);
 
             headerList.add(lfh);
@@ -77,6 +70,67 @@ public class LocalFileDirectory {
             index++;
         }
     }
+    private static LocalFileHeader readLocalFileHeader(InputStream inputStream, long offset,
+                                                       CentralEntryHeader ceh) throws IOException {
+        LocalFileHeader lfh = LocalFileHeader.read(inputStream);
+        if(lfh == null){
+            throw new ArchiveException("Error reading LFH at "
+                    + offset + ", for CEH = " + ceh.getFileName());
+        }
+        offset = offset + lfh.countBytes();
+        ceh.setFileOffset(offset);
+
+        lfh.setCentralEntryHeader(ceh);
+
+        inputStream.skip(lfh.getDataSize());
+
+        lfh.updateDataDescriptor();
+        DataDescriptor dataDescriptor = lfh.getDataDescriptor();
+        if(dataDescriptor != null) {
+            int read = dataDescriptor.readBytes(inputStream);
+            if(read != dataDescriptor.countBytes()) {
+                lfh.setHasDataDescriptor(false);
+            }
+        }
+        return lfh;
+    }
+    /**
+     * Reads local file header of a single entry, values of central directory are kept
+     * where they differ from local header
+     * */
+    public static LocalFileHeader readLocalFileHeader(ZipInput zipInput, CentralEntryHeader ceh) throws IOException {
+        long offset = ceh.getLocalRelativeOffset();
+        long available = zipInput.getLength() - offset;
+        int headerLength = LFH_MIN_LENGTH;
+        if(available >= LFH_MIN_LENGTH){
+            byte[] bytes = new byte[LFH_MIN_LENGTH];
+            InputStream inputStream = zipInput.getInputStream(offset, LFH_MIN_LENGTH);
+            if(inputStream.read(bytes) == LFH_MIN_LENGTH){
+                headerLength += (bytes[26] & 0xff) | ((bytes[27] & 0xff) << 8);
+                headerLength += (bytes[28] & 0xff) | ((bytes[29] & 0xff) << 8);
+            }
+            inputStream.close();
+        }
+        long length = headerLength + getDataAndDescriptorLength(ceh);
+        if(length > available){
+            length = available;
+        }
+        InputStream inputStream = zipInput.getInputStream(offset, length);
+        LocalFileHeader lfh = readLocalFileHeader(inputStream, offset, ceh);
+        inputStream.close();
+        applyCentralValues(lfh, ceh);
+        return lfh;
+    }
+    private static void applyCentralValues(LocalFileHeader lfh, CentralEntryHeader ceh){
+        lfh.setMethod(ceh.getMethod());
+        lfh.setCrc(ceh.getCrc());
+        lfh.setSize(ceh.getSize());
+        lfh.setCompressedSize(ceh.getCompressedSize());
+    }
+    private static long getDataAndDescriptorLength(CentralEntryHeader ceh){
+        // descriptor with signature and zip64 sizes is the largest
+        return ceh.getDataSize() + 24;
+    }
     private void visitApkSigBlock(ZipInput zipInput) throws IOException{
         CentralFileDirectory cfd = getCentralFileDirectory();
         SignatureFooter footer = cfd.getSignatureFooter();
@@ -100,6 +154,10 @@ public class LocalFileDirectory {
         return headerList;
     }
     public ArchiveEntry[] buildArchiveEntryList(){
+        ZipInput lazyInput = this.lazyInput;
+        if(lazyInput != null){
+            return buildLazyArchiveEntryList(lazyInput);
+        }
         List<LocalFileHeader> headerList = getHeaderList();
         int size = headerList.size();
         ArchiveEntry[] entryList = new ArchiveEntry[size];
@@ -113,4 +171,15 @@ public class LocalFileDirectory {
         }
         return entryList;
     }
+    private ArchiveEntry[] buildLazyArchiveEntryList(ZipInput zipInput){
+        List<CentralEntryHeader> cehList = getCentralFileDirectory().getHeaderList();
+        int size = cehList.size();
+        ArchiveEntry[] entryList = new ArchiveEntry[size];
+        for(int i = 0; i < size; i++){
+            entryList[i] = new ArchiveEntry(cehList.get(i), zipInput, i);
+        }
+        return entryList;
+    }
+
+    private static final int LFH_MIN_LENGTH = 30;
 }
@@ -18,20 +18,40 @@ package com.reandroid.archive.writer;
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.RenamedInputSource;
 import com.reandroid.archive.io.ArchiveFileEntrySource;
+import com.reandroid.archive.io.ZipFileInput;
 import com.reandroid.archive.io.ZipFileOutput;
 import com.reandroid.arsc.chunk.TableBlock;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
-    private BufferFileInput buffer;
+    private final List<BufferFileInput> bufferList;
+    private int bufferCount;
     public ApkFileWriter(File file, InputSource[] sources) throws IOException {
         super(new ZipFileOutput(file), sources);
+        this.bufferList = new ArrayList<>();
     }
     @Override
     void closeBuffer() throws IOException{
-        buffer.close();
+        List<BufferFileInput> bufferList = this.bufferList;
+        for(BufferFileInput buffer : bufferList){
+            buffer.close();
+        }
+        bufferList.clear();
+    }
+    @Override
+    void deletePartialOutput() {
+        File file = getZipOutput().getFile();
+        if(file.isFile()){
+            file.delete();
+        }
+    }
+    @Override
+    ZipFileInput openWrittenInput() {
+        return new ZipFileInput(getZipOutput().getFile());
     }
     @Override
     void writeApk(FileOutputSource outputSource, ZipAligner zipAligner) throws IOException{
@@ -40,9 +60,7 @@ public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
     @Override
     void prepareOutputs(FileOutputSource[] outList) throws IOException {
         logMessage("Buffering compress changed files ...");
-        BufferFileInput buffer = writeBuffer(outList);
-        buffer.unlock();
-        this.buffer = buffer;
+        writeBuffer(outList);
     }
     @Override
     FileOutputSource[] createOutArray(int length){
@@ -62,10 +80,27 @@ public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
         return new FileOutputSource(inputSource);
     }
 
-    private BufferFileInput writeBuffer(FileOutputSource[] outputList) throws IOException {
-        File bufferFile = getBufferFile();
+    private void writeBuffer(FileOutputSource[] outputList) throws IOException {
+        File bufferFile = getBufferFile(bufferCount);
+        bufferCount++;
         BufferFileOutput output = new BufferFileOutput(bufferFile);
         BufferFileInput input = new BufferFileInput(bufferFile);
+        // Added before writing, buffer files are deleted by closeBuffer even if writing fails
+        bufferList.add(input);
+        try {
+            writeBuffer(outputList, bufferFile, input, output);
+        } finally {
+            output.close();
+            input.unlock();
+        }
+    }
+    private void writeBuffer(FileOutputSource[] outputList, File bufferFile,
+                             BufferFileInput input, BufferFileOutput output) throws IOException {
+        ParallelBufferWriter parallelWriter = null;
+        int threadCount = getThreadCount();
+        if(threadCount > 1){
+            parallelWriter = new ParallelBufferWriter(this, bufferFile, threadCount);
+        }
         FileOutputSource tableSource = null;
         int length = outputList.length;
         for(int i = 0; i < length; i++){
@@ -75,22 +110,30 @@ public class ApkFileWriter extends ApkWriter<ZipFileOutput, FileOutputSource> {
                 tableSource = fileOutputSource;
                 continue;
             }
+            if(parallelWriter != null){
+                parallelWriter.add(fileOutputSource);
+                continue;
+            }
             onCompressFileProgress(inputSource.getAlias(),
-                    inputSource.getMethod(),
+                    fileOutputSource.getMethod(),
                     output.position());
             fileOutputSource.makeBuffer(input, output);
         }
+        if(parallelWriter != null){
+            bufferList.addAll(parallelWriter.write());
+        }
         if(tableSource != null){
             tableSource.makeBuffer(input, output);
         }
-        output.close();
-        return input;
     }
-    private File getBufferFile(){
+    private File getBufferFile(int index){
         File file = getZipOutput().getFile();
         File dir = file.getParentFile();
         String name = file.getAbsolutePath();
         name = "tmp" + name.hashCode();
+        if(index != 0){
+            name = name + "_" + index;
+        }
         File bufFile;
         if(dir != null){
             bufFile = new File(dir, name);
@@ -16,6 +16,8 @@
 package com.reandroid.archive.writer;
 
 import com.reandroid.archive.InputSource;
+import com.reandroid.archive.RenamedInputSource;
+import com.reandroid.archive.io.ArchiveEntrySource;
 import com.reandroid.archive.io.ZipStreamOutput;
 
 import java.io.IOException;
@@ -37,6 +39,15 @@ public class ApkStreamWriter extends ApkWriter<ZipStreamOutput, StreamOutputSour
     }
     @Override
     StreamOutputSource toOutputSource(InputSource inputSource) {
+        if(inputSource instanceof ArchiveEntrySource){
+            return new ArchiveStreamSource(inputSource);
+        }
+        if(inputSource instanceof RenamedInputSource){
+            RenamedInputSource<?> renamedInputSource = ((RenamedInputSource<?>) inputSource);
+            if(renamedInputSource.getParentInputSource(ArchiveEntrySource.class) != null){
+                return new RenamedArchiveStreamSource(renamedInputSource);
+            }
+        }
         return new StreamOutputSource(inputSource);
     }
     @Override
@@ -15,12 +15,17 @@
  */
 package com.reandroid.archive.writer;
 
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.util.DataSource;
+import com.android.apksig.util.DataSources;
 import com.reandroid.apk.APKLogger;
 import com.reandroid.archive.ArchiveInfo;
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.WriteProgress;
 import com.reandroid.archive.ZipSignature;
 import com.reandroid.archive.block.*;
+import com.reandroid.archive.io.ZipByteOutput;
+import com.reandroid.archive.io.ZipFileInput;
 import com.reandroid.archive.io.ZipOutput;
 
 import java.io.Closeable;
@@ -36,17 +41,26 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
     private APKLogger apkLogger;
     private WriteProgress writeProgress;
     private final HeaderInterceptorChain interceptorChain;
+    private int threadCount = 1;
+    private ApkSignerEngine signerEngine;
+    private CompressionPolicy compressionPolicy;
 
     public ApkWriter(T zipOutput, InputSource[] sources){
         this.zipOutput = zipOutput;
         this.inputSources = sources;
         this.zipAligner = ZipAligner.apkAligner();
+        this.compressionPolicy = CompressionPolicy.defaultPolicy();
         this.interceptorChain = HeaderInterceptorChain.createDefault();
     }
 
     public void write()throws IOException {
         synchronized (mLock){
-            OUT[] outList = buildOutputEntries();
+            ApkSignerEngine signerEngine = getSignerEngine();
+            if(signerEngine != null){
+                writeSigned(new SigningHelper(signerEngine));
+                return;
+            }
+            OUT[] outList = buildOutputEntries(getInputSources());
 
             prepareOutputs(outList);
             writeApkList(outList);
@@ -59,6 +73,78 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
             this.close();
         }
     }
+    private void writeSigned(SigningHelper signingHelper) throws IOException {
+        ZipFileInput writtenInput = null;
+        boolean finished = false;
+        try {
+            writtenInput = openWrittenInput();
+            OUT[] outList = buildOutputEntries(signingHelper.prepareSources(getInputSources()));
+            signingHelper.setDigestRequests(outList);
+            prepareOutputs(outList);
+            logMessage("Digesting files ...");
+            signingHelper.digestPending(outList);
+
+            OUT[] signatureList = buildOutputEntries(signingHelper.createJarSignatureSources());
+            signingHelper.setDigestRequests(signatureList);
+            prepareOutputs(signatureList);
+            signingHelper.digestPending(signatureList);
+
+            writeApkList(outList);
+            writeApkList(signatureList);
+            signingHelper.onEntriesWritten();
+
+            closeBuffer();
+
+            long offset = position();
+            ZipByteOutput cedOutput = new ZipByteOutput();
+            for(OUT outputSource : outList){
+                outputSource.writeCEH(cedOutput);
+            }
+            for(OUT outputSource : signatureList){
+                outputSource.writeCEH(cedOutput);
+            }
+            byte[] centralDirectory = cedOutput.toByteArray();
+            int count = outList.length + signatureList.length;
+            EndRecord endRecord = createEndRecord(offset, count, centralDirectory.length);
+            if(endRecord.getZip64Record() != null){
+                throw new IOException("Signing ZIP64 archive is not supported");
+            }
+            logMessage("Signing ...");
+            DataSource entries = DataSources.asDataSource(writtenInput.getFileChannel(), 0, offset);
+            byte[] signingBlock = signingHelper.createSigningBlock(
+                    entries, centralDirectory, endRecord.getBytes());
+            OutputStream outputStream = getOutputStream();
+            if(signingBlock != null){
+                outputStream.write(signingBlock);
+                endRecord.setOffsetOfCentralDirectory(position());
+            }
+            outputStream.write(centralDirectory);
+            endRecord.writeBytes(outputStream);
+            signingHelper.onDone();
+            finished = true;
+        } finally {
+            closeSigned(writtenInput, finished);
+        }
+    }
+    private void closeSigned(ZipFileInput writtenInput, boolean finished) throws IOException {
+        try {
+            try {
+                if(writtenInput != null){
+                    writtenInput.close();
+                }
+            } finally {
+                closeBuffer();
+            }
+        } finally {
+            try {
+                this.close();
+            } finally {
+                if(!finished){
+                    deletePartialOutput();
+                }
+            }
+        }
+    }
     private void writeApkList(OUT[] outputList) throws IOException{
         int length = outputList.length;
         logMessage("Writing files: " + length);
@@ -75,14 +161,19 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
     }
     void closeBuffer() throws IOException{
     }
-    private void writeCEHList(OUT[] outputList) throws IOException{
+    private EndRecord createEndRecord(long offset, int count, long cedLength){
         EndRecord endRecord = new EndRecord();
         endRecord.setSignature(ZipSignature.END_RECORD);
-        long offset = position();
         endRecord.setOffsetOfCentralDirectory(offset);
-        int count = outputList.length;
         endRecord.setNumberOfDirectories(count);
         endRecord.setTotalNumberOfDirectories(count);
+        endRecord.setLengthOfCentralDirectory(cedLength);
+        return endRecord;
+    }
+    private void writeCEHList(OUT[] outputList) throws IOException{
+        long offset = position();
+        int count = outputList.length;
+        EndRecord endRecord = createEndRecord(offset, count, 0);
         ZipOutput zipOutput = getZipOutput();
         for(int i = 0; i < count; i++){
             OUT outputSource = outputList[i];
@@ -103,17 +194,23 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
         }
         endRecord.writeBytes(getOutputStream());
     }
-    OUT[] buildOutputEntries(){
-        InputSource[] sources = this.getInputSources();
+    OUT[] buildOutputEntries(InputSource[] sources) throws IOException {
         int length = sources.length;
         OUT[] results = createOutArray(length);
         HeaderInterceptorChain interceptorChain = this.getInterceptorChain();
         if(interceptorChain.isDisabled()){
             interceptorChain = null;
         }
+        CompressionPolicy compressionPolicy = getCompressionPolicy();
         for(int i = 0; i < length; i++){
             InputSource inputSource = sources[i];
+            CompressionPolicy.Compression compression = compressionPolicy.getCompression(inputSource);
             OUT out = toOutputSource(inputSource);
+            int method = compression.getMethod();
+            if(method != CompressionPolicy.Compression.METHOD_KEEP){
+                out.setMethod(method);
+            }
+            out.setCompression(compression);
             out.setHeaderInterceptor(interceptorChain);
             results[i] = out;
         }
@@ -121,6 +218,18 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
     }
 
     abstract void writeApk(OUT outputSource, ZipAligner zipAligner) throws IOException;
+    ZipFileInput openWrittenInput() throws IOException {
+        throw new IOException("Signing while writing is not supported by "
+                + getClass().getSimpleName());
+    }
+    /**
+     * Deletes incomplete output after failed signing, called after closing
+     * */
+    void deletePartialOutput() {
+    }
+    /**
+     * Buffers entries before writing, may be called more than once before {@link #closeBuffer()}
+     * */
     abstract void prepareOutputs(OUT[] outList) throws IOException;
     abstract OUT toOutputSource(InputSource inputSource);
     abstract OUT[] createOutArray(int length);
@@ -144,6 +253,41 @@ public abstract class ApkWriter<T extends ZipOutput, OUT extends OutputSource> i
         this.zipAligner = zipAligner;
     }
 
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        if(compressionPolicy == null){
+            compressionPolicy = CompressionPolicy.defaultPolicy();
+        }
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Number of threads used to compress changed entries before writing,
+     * values less than 2 keeps everything on the calling thread.
+     * */
+    public void setThreadCount(int threadCount) {
+        if(threadCount < 1){
+            threadCount = 1;
+        }
+        this.threadCount = threadCount;
+    }
+
+    public ApkSignerEngine getSignerEngine() {
+        return signerEngine;
+    }
+    /**
+     * Signs the apk while writing, existing JAR signature files and signature block are
+     * replaced. Only supported by {@link ApkFileWriter}
+     * */
+    public void setSignerEngine(ApkSignerEngine signerEngine) {
+        this.signerEngine = signerEngine;
+    }
+
     public void setApkSignatureBlock(ApkSignatureBlock apkSignatureBlock) {
         this.apkSignatureBlock = apkSignatureBlock;
     }
@@ -20,6 +20,7 @@ import com.reandroid.archive.block.LocalFileHeader;
 import com.reandroid.archive.io.ArchiveFileEntrySource;
 import com.reandroid.archive.io.ZipFileInput;
 
+import java.io.IOException;
 
 public class ArchiveOutputSource extends FileOutputSource {
     public ArchiveOutputSource(InputSource inputSource){
@@ -30,11 +31,11 @@ public class ArchiveOutputSource extends FileOutputSource {
         return (ArchiveFileEntrySource) super.getInputSource();
     }
     @Override
-    EntryBuffer makeFromEntry(){
+    EntryBuffer makeFromEntry() throws IOException {
         ArchiveFileEntrySource entrySource = getArchiveSource();
         ZipFileInput zipFileInput = entrySource.getZipSource();
         LocalFileHeader lfh = entrySource.getArchiveEntry().getLocalFileHeader();
-        if(lfh.getMethod() != getInputSource().getMethod()){
+        if(!canCopyRaw(lfh.getMethod())){
             return null;
         }
         return new EntryBuffer(zipFileInput,
@@ -42,7 +43,7 @@ public class ArchiveOutputSource extends FileOutputSource {
                 lfh.getDataSize());
     }
     @Override
-    LocalFileHeader createLocalFileHeader(){
+    LocalFileHeader createLocalFileHeader() throws IOException {
         ArchiveFileEntrySource source = getArchiveSource();
         LocalFileHeader lfh = source.getArchiveEntry().getLocalFileHeader();
         return lfh.copy();
@@ -0,0 +1,59 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.block.LocalFileHeader;
+import com.reandroid.archive.io.ArchiveEntrySource;
+import com.reandroid.archive.io.ZipStreamOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copies compressed data, crc and sizes of unchanged archive entries as they are
+ * */
+class ArchiveStreamSource extends StreamOutputSource {
+    ArchiveStreamSource(InputSource inputSource) {
+        super(inputSource);
+    }
+
+    ArchiveEntrySource<?> getArchiveSource(){
+        return (ArchiveEntrySource<?>) super.getInputSource();
+    }
+    @Override
+    void writeApk(ZipStreamOutput zipOutput, ZipAligner zipAligner) throws IOException {
+        ArchiveEntrySource<?> entrySource = getArchiveSource();
+        LocalFileHeader sourceLfh = entrySource.getArchiveEntry().getLocalFileHeader();
+        if(!canCopyRaw(sourceLfh.getMethod())){
+            super.writeApk(zipOutput, zipAligner);
+            return;
+        }
+        logLargeFileWrite();
+        writeLFH(zipOutput, zipAligner);
+        getLocalFileHeader().setFileOffset(zipOutput.position());
+        InputStream inputStream = entrySource.getZipSource().getInputStream(
+                sourceLfh.getFileOffset(), sourceLfh.getDataSize());
+        zipOutput.write(inputStream);
+        writeDD(zipOutput);
+    }
+    @Override
+    LocalFileHeader createLocalFileHeader() throws IOException {
+        ArchiveEntrySource<?> source = getArchiveSource();
+        LocalFileHeader lfh = source.getArchiveEntry().getLocalFileHeader();
+        return lfh.copy();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.InputSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * Chooses compression method, level and strategy of each entry. Rules are matched in the
+ * order they are added and the first match wins, otherwise default compression is used.
+ * */
+public class CompressionPolicy {
+
+    private final List<Rule> ruleList;
+    private Compression defaultCompression;
+
+    public CompressionPolicy(Compression defaultCompression){
+        this.ruleList = new ArrayList<>();
+        setDefaultCompression(defaultCompression);
+    }
+    public CompressionPolicy(){
+        this(Compression.FAST);
+    }
+
+    public Compression getDefaultCompression() {
+        return defaultCompression;
+    }
+    public void setDefaultCompression(Compression defaultCompression) {
+        if(defaultCompression == null){
+            defaultCompression = Compression.FAST;
+        }
+        this.defaultCompression = defaultCompression;
+    }
+    /**
+     * Applies to entries whose path matches
+     * */
+    public void addRule(Pattern pattern, Compression compression){
+        addRule(pattern, 0, null, compression);
+    }
+    /**
+     * Applies to entries whose path matches (any path if null) and size is at least minSize
+     * */
+    public void addRule(Pattern pattern, long minSize, Compression compression){
+        addRule(pattern, minSize, null, compression);
+    }
+    /**
+     * Applies to entries of given source type, e.g. {@link com.reandroid.archive.BlockInputSource}
+     * */
+    public void addRule(Class<? extends InputSource> type, Compression compression){
+        addRule(null, 0, type, compression);
+    }
+    public void addRule(Pattern pattern, long minSize, Class<? extends InputSource> type, Compression compression){
+        if(compression == null){
+            return;
+        }
+        ruleList.add(new Rule(pattern, minSize, type, compression));
+    }
+    public void clearRules(){
+        ruleList.clear();
+    }
+    public Compression getCompression(InputSource inputSource) throws IOException {
+        for(Rule rule : ruleList){
+            if(rule.matches(inputSource)){
+                return rule.compression;
+            }
+        }
+        return getDefaultCompression();
+    }
+
+    /**
+     * Compression used before policies were introduced, keeps the method of each source
+     * and deflates with {@link Deflater#BEST_SPEED}
+     * */
+    public static CompressionPolicy defaultPolicy(){
+        return new CompressionPolicy(Compression.FAST);
+    }
+    /**
+     * For quick local installs, large assets and raw resources are stored
+     * */
+    public static CompressionPolicy fastest(){
+        CompressionPolicy policy = new CompressionPolicy(Compression.FAST);
+        policy.addRule(PATTERN_ASSETS, LARGE_FILE_SIZE, Compression.STORED);
+        return policy;
+    }
+    public static CompressionPolicy balanced(){
+        CompressionPolicy policy = new CompressionPolicy(Compression.DEFAULT);
+        policy.addRule(PATTERN_DEX_TABLE, Compression.SMALLEST);
+        return policy;
+    }
+    public static CompressionPolicy smallest(){
+        return new CompressionPolicy(Compression.SMALLEST);
+    }
+
+    public static class Compression {
+        private final int method;
+        private final int level;
+        private final int strategy;
+        private final boolean recompress;
+
+        /**
+         * @param method {@link Archive#STORED}, {@link Archive#DEFLATED} or {@link #METHOD_KEEP}
+         * @param recompress if true, deflated entries of source archive are re-compressed with
+         *                   this level instead of copying as they are
+         * */
+        public Compression(int method, int level, int strategy, boolean recompress){
+            this.method = method;
+            this.level = level;
+            this.strategy = strategy;
+            this.recompress = recompress;
+        }
+        public Compression(int method, int level){
+            this(method, level, Deflater.DEFAULT_STRATEGY, false);
+        }
+
+        public int getMethod() {
+            return method;
+        }
+        public int getLevel() {
+            return level;
+        }
+        public int getStrategy() {
+            return strategy;
+        }
+        public boolean isRecompress() {
+            return recompress;
+        }
+        @Override
+        public String toString() {
+            return "method=" + method + ", level=" + level
+                    + ", strategy=" + strategy + ", recompress=" + recompress;
+        }
+
+        public static final int METHOD_KEEP = -1;
+
+        public static final Compression FAST = new Compression(METHOD_KEEP, Deflater.BEST_SPEED);
+        public static final Compression DEFAULT = new Compression(METHOD_KEEP, Deflater.DEFAULT_COMPRESSION);
+        public static final Compression SMALLEST = new Compression(METHOD_KEEP,
+                Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY, true);
+        public static final Compression STORED = new Compression(Archive.STORED, Deflater.NO_COMPRESSION);
+    }
+
+    private static class Rule {
+        final Pattern pattern;
+        final long minSize;
+        final Class<? extends InputSource> type;
+        final Compression compression;
+        Rule(Pattern pattern, long minSize, Class<? extends InputSource> type, Compression compression){
+            this.pattern = pattern;
+            this.minSize = minSize;
+            this.type = type;
+            this.compression = compression;
+        }
+        boolean matches(InputSource inputSource) throws IOException {
+            if(type != null && !type.isInstance(inputSource)){
+                return false;
+            }
+            if(pattern != null && !pattern.matcher(inputSource.getAlias()).matches()){
+                return false;
+            }
+            return minSize <= 0 || inputSource.getLength() >= minSize;
+        }
+    }
+
+    private static final long LARGE_FILE_SIZE = 1024 * 1024;
+    private static final Pattern PATTERN_ASSETS = Pattern.compile("^(assets/|res/raw/).+");
+    private static final Pattern PATTERN_DEX_TABLE = Pattern.compile("^(classes[0-9]*\\.dex|resources\\.arsc)$");
+}
@@ -21,7 +21,6 @@ import com.reandroid.archive.io.ZipFileOutput;
 import com.reandroid.archive.io.ZipOutput;
 
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 
 class FileOutputSource extends OutputSource {
     private EntryBuffer entryBuffer;
@@ -30,16 +29,18 @@ class FileOutputSource extends OutputSource {
         super(inputSource);
     }
     void makeBuffer(BufferFileInput input, BufferFileOutput output) throws IOException {
-        EntryBuffer entryBuffer = this.entryBuffer;
-        if(entryBuffer != null){
+        if(makeBufferFromEntry()){
             return;
         }
-        entryBuffer = makeFromEntry();
-        if(entryBuffer != null){
+        this.entryBuffer = writeBuffer(input, output);
+    }
+    boolean makeBufferFromEntry() throws IOException {
+        EntryBuffer entryBuffer = this.entryBuffer;
+        if(entryBuffer == null){
+            entryBuffer = makeFromEntry();
             this.entryBuffer = entryBuffer;
-            return;
         }
-        this.entryBuffer = writeBuffer(input, output);
+        return entryBuffer != null;
     }
     private EntryBuffer writeBuffer(BufferFileInput input, ZipOutput output) throws IOException {
         long offset = output.position();
@@ -47,23 +48,22 @@ class FileOutputSource extends OutputSource {
         long length = output.position() - offset;
         return new EntryBuffer(input, offset, length);
     }
-    EntryBuffer makeFromEntry(){
+    EntryBuffer makeFromEntry() throws IOException {
         return null;
     }
     void writeApk(ZipFileOutput zipFileOutput, ZipAligner zipAligner) throws IOException{
         logLargeFileWrite();
         EntryBuffer entryBuffer = this.entryBuffer;
-        FileChannel input = entryBuffer.getZipFileInput().getFileChannel();
-        input.position(entryBuffer.getOffset());
         writeLFH(zipFileOutput, zipAligner);
-        writeData(input, entryBuffer.getLength(), zipFileOutput);
+        writeData(entryBuffer, zipFileOutput);
         writeDD(zipFileOutput);
     }
-    private void writeData(FileChannel input, long length, ZipFileOutput apkFileWriter) throws IOException{
+    private void writeData(EntryBuffer entryBuffer, ZipFileOutput apkFileWriter) throws IOException{
         long offset = apkFileWriter.position();
         LocalFileHeader lfh = getLocalFileHeader();
         lfh.setFileOffset(offset);
-        apkFileWriter.write(input, length);
+        apkFileWriter.write(entryBuffer.getZipFileInput(),
+                entryBuffer.getOffset(), entryBuffer.getLength());
     }
 
 
@@ -15,6 +15,7 @@
  */
 package com.reandroid.archive.writer;
 
+import com.android.apksig.ApkSignerEngine;
 import com.reandroid.apk.APKLogger;
 import com.reandroid.archive.Archive;
 import com.reandroid.archive.InputSource;
@@ -23,6 +24,7 @@ import com.reandroid.archive.block.CentralEntryHeader;
 import com.reandroid.archive.block.DataDescriptor;
 import com.reandroid.archive.block.LocalFileHeader;
 import com.reandroid.archive.io.CountingOutputStream;
+import com.reandroid.archive.io.ZipCodecPool;
 import com.reandroid.archive.io.ZipOutput;
 import com.reandroid.utils.io.FileUtil;
 
@@ -36,9 +38,14 @@ class OutputSource {
     private LocalFileHeader lfh;
     private APKLogger apkLogger;
     private HeaderInterceptor headerInterceptor;
+    private CompressionPolicy.Compression compression;
+    private int method;
+    private ApkSignerEngine.InspectJarEntryRequest digestRequest;
 
     OutputSource(InputSource inputSource){
         this.inputSource = inputSource;
+        this.compression = CompressionPolicy.Compression.FAST;
+        this.method = inputSource.getMethod();
     }
 
     void writeBuffer(ZipOutput zipOutput) throws IOException {
@@ -48,20 +55,28 @@ class OutputSource {
         CountingOutputStream<OutputStream> rawCounter = new CountingOutputStream<>(rawStream);
         CountingOutputStream<DeflaterOutputStream> deflateCounter = null;
 
-        if(inputSource.getMethod() != Archive.STORED){
+        Deflater deflater = null;
+        if(getMethod() != Archive.STORED){
+            CompressionPolicy.Compression compression = getCompression();
+            deflater = ZipCodecPool.obtainDeflater(compression.getLevel(), compression.getStrategy());
             DeflaterOutputStream deflaterInputStream = (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT) ?
-                    new DeflaterOutputStream(rawCounter, new Deflater(Deflater.BEST_SPEED, true), true)
-                    :  new DeflaterOutputStream(rawCounter, new Deflater(Deflater.BEST_SPEED, true));
+                    new DeflaterOutputStream(rawCounter, deflater, true)
+                    :  new DeflaterOutputStream(rawCounter, deflater);
             deflateCounter = new CountingOutputStream<>(deflaterInputStream, false);
         }
         if(deflateCounter != null){
             rawCounter.disableCrc(true);
-            inputSource.write(deflateCounter);
-            deflateCounter.close();
+            try {
+                inputSource.write(digesting(deflateCounter));
+                deflateCounter.close();
+            } finally {
+                ZipCodecPool.releaseDeflater(deflater);
+            }
             rawCounter.close();
         }else {
-            inputSource.write(rawCounter);
+            inputSource.write(digesting(rawCounter));
         }
+        onDigested();
 
         lfh.setCompressedSize(rawCounter.getSize());
 
@@ -76,6 +91,13 @@ class OutputSource {
         }
         inputSource.disposeInputSource();
     }
+    private OutputStream digesting(OutputStream outputStream){
+        ApkSignerEngine.InspectJarEntryRequest request = this.digestRequest;
+        if(request == null){
+            return outputStream;
+        }
+        return new SigningHelper.DigestOutputStream(outputStream, request.getDataSink());
+    }
     void writeCEH(ZipOutput zipOutput) throws IOException{
         LocalFileHeader lfh = getLocalFileHeader();
         CentralEntryHeader ceh = CentralEntryHeader.fromLocalFileHeader(lfh);
@@ -99,6 +121,53 @@ class OutputSource {
         lfh.writeBytes(zipOutput.getOutputStream());
     }
 
+    /**
+     * Method the entry is written with, initially the method of input source. Set by writer
+     * from {@link CompressionPolicy}, the input source is not changed.
+     * */
+    int getMethod() {
+        return method;
+    }
+    void setMethod(int method) {
+        this.method = method;
+    }
+    CompressionPolicy.Compression getCompression() {
+        return compression;
+    }
+    void setCompression(CompressionPolicy.Compression compression) {
+        if(compression == null){
+            compression = CompressionPolicy.Compression.FAST;
+        }
+        this.compression = compression;
+    }
+    /**
+     * @return true if source entry data of given method can be copied without re-compressing
+     * */
+    boolean canCopyRaw(int sourceMethod){
+        if(sourceMethod != getMethod()){
+            return false;
+        }
+        return sourceMethod == Archive.STORED || !getCompression().isRecompress();
+    }
+
+    ApkSignerEngine.InspectJarEntryRequest getDigestRequest() {
+        return digestRequest;
+    }
+    /**
+     * Set while signing, the uncompressed data is digested as it is written to buffer.
+     * Entries copied raw are left pending, see {@link SigningHelper#digestPending(OutputSource[])}
+     * */
+    void setDigestRequest(ApkSignerEngine.InspectJarEntryRequest digestRequest) {
+        this.digestRequest = digestRequest;
+    }
+    void onDigested(){
+        ApkSignerEngine.InspectJarEntryRequest request = this.digestRequest;
+        if(request != null){
+            this.digestRequest = null;
+            request.done();
+        }
+    }
+
     public void setHeaderInterceptor(HeaderInterceptor interceptor) {
         this.headerInterceptor = interceptor;
     }
@@ -123,7 +192,7 @@ class OutputSource {
     InputSource getInputSource() {
         return inputSource;
     }
-    LocalFileHeader getLocalFileHeader(){
+    LocalFileHeader getLocalFileHeader() throws IOException {
         if(lfh == null){
             LocalFileHeader lfh = createLocalFileHeader();
             lfh.setFileName(getInputSource().getAlias());
@@ -133,16 +202,16 @@ class OutputSource {
         }
         return lfh;
     }
-    LocalFileHeader createLocalFileHeader(){
+    LocalFileHeader createLocalFileHeader() throws IOException {
         InputSource inputSource = getInputSource();
         LocalFileHeader lfh = new LocalFileHeader();
         lfh.setSignature(ZipSignature.LOCAL_FILE);
         lfh.getGeneralPurposeFlag().initDefault();
         lfh.setFileName(inputSource.getAlias());
-        lfh.setMethod(inputSource.getMethod());
+        lfh.setMethod(getMethod());
         return lfh;
     }
-    void logLargeFileWrite(){
+    void logLargeFileWrite() throws IOException {
         APKLogger logger =  this.apkLogger;
         if(logger == null){
             return;
@@ -153,7 +222,7 @@ class OutputSource {
         }
         logFileWrite();
     }
-    void logFileWrite(){
+    void logFileWrite() throws IOException {
         APKLogger logger =  this.apkLogger;
         if(logger == null){
             return;
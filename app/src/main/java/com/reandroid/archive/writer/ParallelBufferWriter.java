@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compresses independent entries concurrently, each worker owns its own
+ * buffer segment file so no locking is required while deflating.
+ * Entries keep their own {@link EntryBuffer} pointing to the segment, thus the
+ * final apk is written in original order and is identical to single threaded output.
+ * */
+class ParallelBufferWriter {
+    private final ApkWriter<?, ?> apkWriter;
+    private final File bufferFile;
+    private final int threadCount;
+    private final List<FileOutputSource> pendingList;
+    private final List<BufferFileInput> segmentList;
+
+    ParallelBufferWriter(ApkWriter<?, ?> apkWriter, File bufferFile, int threadCount){
+        this.apkWriter = apkWriter;
+        this.bufferFile = bufferFile;
+        this.threadCount = threadCount;
+        this.pendingList = new ArrayList<>();
+        this.segmentList = new ArrayList<>();
+    }
+
+    void add(FileOutputSource outputSource) throws IOException {
+        if(!outputSource.makeBufferFromEntry()){
+            pendingList.add(outputSource);
+        }
+    }
+    List<BufferFileInput> write() throws IOException {
+        List<FileOutputSource> pendingList = this.pendingList;
+        int count = Math.min(threadCount, pendingList.size());
+        if(count == 0){
+            return segmentList;
+        }
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Future<?>> futureList = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            File file = new File(bufferFile.getPath() + "-" + i);
+            file.deleteOnExit();
+            BufferFileInput input = new BufferFileInput(file);
+            BufferFileOutput output = new BufferFileOutput(file);
+            segmentList.add(input);
+            futureList.add(executor.submit(() -> {
+                writeSegment(input, output, next);
+                return null;
+            }));
+        }
+        executor.shutdown();
+        boolean finished = false;
+        try {
+            for(Future<?> future : futureList){
+                future.get();
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if(!finished){
+                executor.shutdownNow();
+            }
+            for(BufferFileInput input : segmentList){
+                input.unlock();
+                if(!finished){
+                    input.close();
+                }
+            }
+        }
+        return segmentList;
+    }
+    private void writeSegment(BufferFileInput input, BufferFileOutput output, AtomicInteger next) throws IOException {
+        List<FileOutputSource> pendingList = this.pendingList;
+        int size = pendingList.size();
+        try {
+            int i;
+            while ((i = next.getAndIncrement()) < size){
+                FileOutputSource outputSource = pendingList.get(i);
+                onCompressFileProgress(outputSource, output.position());
+                outputSource.makeBuffer(input, output);
+            }
+        } finally {
+            output.close();
+        }
+    }
+    private void onCompressFileProgress(FileOutputSource outputSource, long position){
+        synchronized (apkWriter){
+            apkWriter.onCompressFileProgress(outputSource.getInputSource().getAlias(),
+                    outputSource.getMethod(), position);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive.writer;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSink;
+import com.android.apksig.util.DataSource;
+import com.android.apksig.util.DataSources;
+import com.reandroid.archive.Archive;
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives {@link ApkSignerEngine} along with {@link ApkWriter}, JAR entries are digested
+ * while being written to buffer and the APK signing block is computed over the written
+ * entries, thus signed apk is produced with a single write.
+ * */
+class SigningHelper {
+    private final ApkSignerEngine signerEngine;
+    private final List<ApkSignerEngine.InspectJarEntryRequest> digestRequests;
+    private ApkSignerEngine.OutputJarSignatureRequest jarSignatureRequest;
+    private byte[] buffer;
+
+    SigningHelper(ApkSignerEngine signerEngine){
+        this.signerEngine = signerEngine;
+        this.digestRequests = new ArrayList<>();
+    }
+
+    /**
+     * @return sources to be written, previous JAR signature files are excluded. Digest requests
+     * are assigned to the outputs of the sources by {@link #setDigestRequests(OutputSource[])}
+     * */
+    InputSource[] prepareSources(InputSource[] sources) throws IOException {
+        ApkSignerEngine signerEngine = this.signerEngine;
+        List<InputSource> results = new ArrayList<>(sources.length);
+        for(InputSource inputSource : sources){
+            String name = inputSource.getAlias();
+            ApkSignerEngine.InputJarEntryInstructions instructions = signerEngine.inputJarEntry(name);
+            ApkSignerEngine.InspectJarEntryRequest inputRequest = instructions.getInspectJarEntryRequest();
+            if(inputRequest != null){
+                consume(inputRequest, inputSource.openStream());
+            }
+            if(instructions.getOutputPolicy() != ApkSignerEngine.InputJarEntryInstructions.OutputPolicy.OUTPUT){
+                // previous JAR signature files, replaced by the engine
+                continue;
+            }
+            results.add(inputSource);
+        }
+        return requestDigests(results);
+    }
+    /**
+     * Called after all entries are digested
+     * @return JAR signature files to be written after the entries
+     * */
+    InputSource[] createJarSignatureSources() throws IOException {
+        ApkSignerEngine.OutputJarSignatureRequest request;
+        try {
+            request = signerEngine.outputJarEntries();
+        } catch (ApkFormatException | GeneralSecurityException exception) {
+            throw new IOException("Failed to generate JAR signature", exception);
+        }
+        this.jarSignatureRequest = request;
+        List<InputSource> results = new ArrayList<>();
+        if(request != null){
+            for(ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry : request.getAdditionalJarEntries()){
+                ByteInputSource inputSource = new ByteInputSource(entry.getData(), entry.getName());
+                inputSource.setMethod(Archive.DEFLATED);
+                results.add(inputSource);
+            }
+        }
+        return requestDigests(results);
+    }
+    void setDigestRequests(OutputSource[] outList){
+        List<ApkSignerEngine.InspectJarEntryRequest> requests = this.digestRequests;
+        for(int i = 0; i < outList.length; i++){
+            outList[i].setDigestRequest(requests.get(i));
+        }
+        requests.clear();
+    }
+    /**
+     * Digests entries not passed through buffer, i.e. copied raw from source archive
+     * */
+    void digestPending(OutputSource[] outList) throws IOException {
+        for(OutputSource outputSource : outList){
+            ApkSignerEngine.InspectJarEntryRequest request = outputSource.getDigestRequest();
+            if(request != null){
+                outputSource.setDigestRequest(null);
+                consume(request, outputSource.getInputSource().openStream());
+            }
+        }
+    }
+    private InputSource[] requestDigests(List<InputSource> sources){
+        List<ApkSignerEngine.InspectJarEntryRequest> requests = this.digestRequests;
+        requests.clear();
+        for(InputSource inputSource : sources){
+            requests.add(signerEngine.outputJarEntry(inputSource.getAlias()));
+        }
+        return sources.toArray(new InputSource[0]);
+    }
+    void onEntriesWritten(){
+        ApkSignerEngine.OutputJarSignatureRequest request = this.jarSignatureRequest;
+        if(request != null){
+            request.done();
+            this.jarSignatureRequest = null;
+        }
+    }
+    /**
+     * @return padding followed by APK signing block to be written before central directory,
+     * or null if v2+ signing is not enabled
+     * */
+    byte[] createSigningBlock(DataSource entries, byte[] centralDirectory, byte[] endRecord) throws IOException {
+        ApkSignerEngine.OutputApkSigningBlockRequest2 request;
+        try {
+            request = signerEngine.outputZipSections2(entries,
+                    DataSources.asDataSource(ByteBuffer.wrap(centralDirectory)),
+                    DataSources.asDataSource(ByteBuffer.wrap(endRecord)));
+        } catch (ApkFormatException | GeneralSecurityException exception) {
+            throw new IOException("Failed to generate APK signing block", exception);
+        }
+        if(request == null){
+            return null;
+        }
+        int padding = request.getPaddingSizeBeforeApkSigningBlock();
+        byte[] block = request.getApkSigningBlock();
+        request.done();
+        byte[] result = new byte[padding + block.length];
+        System.arraycopy(block, 0, result, padding, block.length);
+        return result;
+    }
+    void onDone(){
+        signerEngine.outputDone();
+    }
+    private void consume(ApkSignerEngine.InspectJarEntryRequest request, InputStream inputStream) throws IOException {
+        DataSink dataSink = request.getDataSink();
+        byte[] buffer = this.buffer;
+        if(buffer == null){
+            buffer = new byte[BUFFER_SIZE];
+            this.buffer = buffer;
+        }
+        try {
+            int read;
+            while ((read = inputStream.read(buffer, 0, buffer.length)) > 0){
+                dataSink.consume(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        request.done();
+    }
+
+    static class DigestOutputStream extends OutputStream {
+        private final OutputStream outputStream;
+        private final DataSink dataSink;
+
+        DigestOutputStream(OutputStream outputStream, DataSink dataSink){
+            this.outputStream = outputStream;
+            this.dataSink = dataSink;
+        }
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            outputStream.write(bytes, offset, length);
+            dataSink.consume(bytes, offset, length);
+        }
+        @Override
+        public void write(int i) throws IOException {
+            write(new byte[]{(byte) i}, 0, 1);
+        }
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
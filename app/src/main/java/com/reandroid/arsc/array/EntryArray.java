@@ -28,7 +28,9 @@ import com.reandroid.json.JSONArray;
 import com.reandroid.json.JSONConvert;
 import com.reandroid.json.JSONObject;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 public class EntryArray extends OffsetBlockArray<Entry> implements JSONConvert<JSONArray> {
 
@@ -108,6 +110,9 @@ public class EntryArray extends OffsetBlockArray<Entry> implements JSONConvert<J
         if(entry != null){
             return entry;
         }
+        return create(id);
+    }
+    private Entry create(int id){
         boolean sparse = isSparse();
         int count;
         if(sparse){
@@ -242,10 +247,24 @@ public class EntryArray extends OffsetBlockArray<Entry> implements JSONConvert<J
         refreshCountAndStart();
     }
     private void mergeSparse(EntryArray entryArray){
+        SparseOffsetsArray offsetsArray = (SparseOffsetsArray) getOffsetArray();
+        int size = offsetsArray.size();
+        Map<Integer, Entry> entriesById = new HashMap<>(size);
+        for(int i = 0; i < size; i++){
+            int id = offsetsArray.getIdx(i);
+            if(id != SparseOffsetsArray.NO_ENTRY){
+                entriesById.putIfAbsent(id, super.get(i));
+            }
+        }
         Iterator<Entry> itr = entryArray.iterator(true);
         while (itr.hasNext()){
             Entry comingBlock = itr.next();
-            Entry existingBlock = getOrCreate((short) comingBlock.getId());
+            int id = 0xffff & comingBlock.getId();
+            Entry existingBlock = entriesById.get(id);
+            if(existingBlock == null){
+                existingBlock = create(id);
+                entriesById.put(id, existingBlock);
+            }
             existingBlock.merge(comingBlock);
         }
     }
@@ -30,6 +30,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 public class PackageArray extends BlockArray<PackageBlock>
         implements BlockLoad, JSONConvert<JSONArray>, Comparator<PackageBlock> {
@@ -166,12 +167,15 @@ public class PackageArray extends BlockArray<PackageBlock>
         }
     }
     public void merge(PackageArray packageArray){
+        merge(packageArray, null);
+    }
+    public void merge(PackageArray packageArray, ExecutorService executor){
         if(packageArray==null||packageArray==this){
             return;
         }
         for(PackageBlock packageBlock:packageArray.listItems()){
             PackageBlock exist=getOrCreate(packageBlock.getId());
-            exist.merge(packageBlock);
+            exist.merge(packageBlock, executor);
         }
     }
     @Override
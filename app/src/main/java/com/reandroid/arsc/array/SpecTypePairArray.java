@@ -28,10 +28,15 @@ import com.reandroid.json.JSONArray;
 import com.reandroid.json.JSONConvert;
 import com.reandroid.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class SpecTypePairArray extends BlockArray<SpecTypePair>
         implements JSONConvert<JSONArray>, Comparator<SpecTypePair> {
@@ -311,15 +316,78 @@ public class SpecTypePairArray extends BlockArray<SpecTypePair>
         return jsonArray;
     }
     public void merge(SpecTypePairArray pairArray){
+        merge(pairArray, null);
+    }
+    /**
+     * Type pairs are created in order on the calling thread, then each pair is merged
+     * on the executor (if not null). Pairs do not share blocks thus only string pools
+     * are touched concurrently, which should already contain coming strings.
+     * */
+    public void merge(SpecTypePairArray pairArray, ExecutorService executor){
         if(pairArray==null || pairArray==this){
             return;
         }
+        List<Future<?>> futureList = null;
+        if(executor != null){
+            futureList = new ArrayList<>();
+        }
+        SpecTypePair[] pairsById = new SpecTypePair[256];
+        Iterator<SpecTypePair> iterator = iterator();
+        while (iterator.hasNext()){
+            SpecTypePair specTypePair = iterator.next();
+            if(specTypePair != null){
+                int id = 0xff & specTypePair.getTypeId();
+                if(pairsById[id] == null){
+                    pairsById[id] = specTypePair;
+                }
+            }
+        }
         for(SpecTypePair typePair:pairArray.listItems()){
             if(typePair.isEmpty()){
                 continue;
             }
-            SpecTypePair exist=getOrCreate(typePair.getTypeId());
-            exist.merge(typePair);
+            int id = 0xff & typePair.getTypeId();
+            SpecTypePair exist = pairsById[id];
+            if(exist == null){
+                exist = getOrCreate(typePair.getTypeId());
+                pairsById[id] = exist;
+            }
+            if(futureList != null){
+                SpecTypePair specTypePair = exist;
+                futureList.add(executor.submit(() -> specTypePair.merge(typePair)));
+            }else {
+                exist.merge(typePair);
+            }
+        }
+        if(futureList != null){
+            awaitAll(futureList);
+        }
+    }
+    private static void awaitAll(List<Future<?>> futureList){
+        boolean finished = false;
+        try {
+            for(Future<?> future : futureList){
+                future.get();
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while merging", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if(!finished){
+                for(Future<?> future : futureList){
+                    future.cancel(true);
+                }
+            }
         }
     }
     /**
@@ -33,8 +33,10 @@ import com.reandroid.utils.collection.ComputeIterator;
 
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 
@@ -122,8 +124,11 @@ public class TypeBlockArray extends BlockArray<TypeBlock>
         if(typeBlock != null){
             return typeBlock;
         }
+        return create(resConfig, sparse, offset16);
+    }
+    private TypeBlock create(ResConfig resConfig, boolean sparse, boolean offset16){
         byte id = getTypeId();
-        typeBlock = createNext(sparse, offset16);
+        TypeBlock typeBlock = createNext(sparse, offset16);
         typeBlock.setTypeId(id);
         ResConfig config = typeBlock.getResConfig();
         config.copyFrom(resConfig);
@@ -393,9 +398,26 @@ public class TypeBlockArray extends BlockArray<TypeBlock>
         if(typeBlockArray == null || typeBlockArray == this){
             return;
         }
+        Map<ResConfig, TypeBlock> sparseMap = new HashMap<>();
+        Map<ResConfig, TypeBlock> nonSparseMap = new HashMap<>();
+        Iterator<TypeBlock> iterator = iterator();
+        while (iterator.hasNext()){
+            TypeBlock typeBlock = iterator.next();
+            if(typeBlock == null){
+                continue;
+            }
+            Map<ResConfig, TypeBlock> map = typeBlock.isSparse() ? sparseMap : nonSparseMap;
+            map.putIfAbsent(typeBlock.getResConfig(), typeBlock);
+        }
         for(TypeBlock typeBlock:typeBlockArray.listItems()){
-            TypeBlock exist = getOrCreate(
-                    typeBlock.getResConfig(), typeBlock.isSparse());
+            boolean sparse = typeBlock.isSparse();
+            Map<ResConfig, TypeBlock> map = sparse ? sparseMap : nonSparseMap;
+            ResConfig resConfig = typeBlock.getResConfig();
+            TypeBlock exist = map.get(resConfig);
+            if(exist == null){
+                exist = create(resConfig, sparse, false);
+                map.put(exist.getResConfig(), exist);
+            }
             exist.merge(typeBlock);
         }
     }
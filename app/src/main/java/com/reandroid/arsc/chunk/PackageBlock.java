@@ -63,6 +63,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 
 
@@ -734,6 +735,13 @@ public class PackageBlock extends Chunk<PackageHeader>
         }
     }
     public void merge(PackageBlock packageBlock){
+        merge(packageBlock, null);
+    }
+    /**
+     * Types are merged concurrently on the given executor (if not null) after
+     * merging spec string pool
+     * */
+    public void merge(PackageBlock packageBlock, ExecutorService executor){
         if(packageBlock==null||packageBlock==this){
             return;
         }
@@ -744,7 +752,7 @@ public class PackageBlock extends Chunk<PackageHeader>
         setName(packageBlock.getName());
         getLibraryBlock().merge(packageBlock.getLibraryBlock());
         getSpecStringPool().merge(packageBlock.getSpecStringPool());
-        getSpecTypePairArray().merge(packageBlock.getSpecTypePairArray());
+        getSpecTypePairArray().merge(packageBlock.getSpecTypePairArray(), executor);
         getOverlayableList().merge(packageBlock.getOverlayableList());
         getStagedAliasList().merge(packageBlock.getStagedAliasList());
     }
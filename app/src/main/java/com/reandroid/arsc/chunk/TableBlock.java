@@ -42,6 +42,7 @@ import java.io.*;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 
 public class TableBlock extends Chunk<TableHeader>
@@ -795,11 +796,18 @@ public class TableBlock extends Chunk<TableHeader>
         refresh();
     }
     public void merge(TableBlock tableBlock){
+        merge(tableBlock, null);
+    }
+    /**
+     * Merges string pools first and then types of each package concurrently on the given
+     * executor, output is the same as sequential merge. Null executor merges sequentially.
+     * */
+    public void merge(TableBlock tableBlock, ExecutorService executor){
         if(tableBlock == null || tableBlock == this){
             return;
         }
         getStringPool().merge(tableBlock.getStringPool());
-        getPackageArray().merge(tableBlock.getPackageArray());
+        getPackageArray().merge(tableBlock.getPackageArray(), executor);
         refresh();
     }
     @Override
@@ -851,6 +859,11 @@ public class TableBlock extends Chunk<TableHeader>
         tableBlock.readBytes(inputStream);
         return tableBlock;
     }
+    public static TableBlock load(BlockReader reader) throws IOException{
+        TableBlock tableBlock=new TableBlock();
+        tableBlock.readBytes(reader);
+        return tableBlock;
+    }
     public static TableBlock createEmpty() {
         TableBlock tableBlock = new TableBlock();
         tableBlock.initializeAsEmpty();
@@ -20,11 +20,14 @@ import com.reandroid.arsc.header.SpecHeader;
 import com.reandroid.arsc.header.TypeHeader;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class BlockReader extends InputStream {
     private final Object mLock = new Object();
 
     private byte[] BUFFER;
+    private ByteBuffer mByteBuffer;
     private final int mStart;
     private final int mLength;
     private int mPosition;
@@ -40,6 +43,20 @@ public class BlockReader extends InputStream {
     public BlockReader(byte[] buffer) {
         this(buffer, 0, buffer.length);
     }
+    /**
+     * Reads directly from remaining bytes of the buffer (e.g. memory mapped entry) without
+     * copying it to heap, position of the given buffer is not changed
+     * */
+    public BlockReader(ByteBuffer buffer) {
+        this(buffer.duplicate(), buffer.position(), buffer.remaining());
+    }
+    private BlockReader(ByteBuffer buffer, int start, int length) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.mByteBuffer = buffer;
+        this.mStart = start;
+        this.mLength = length;
+        this.mPosition = 0;
+    }
     public BlockReader(InputStream in) throws IOException {
         this(loadBuffer(in));
     }
@@ -52,19 +69,64 @@ public class BlockReader extends InputStream {
     public int readUnsignedShort() throws IOException {
         return 0x0000ffff & readShort();
     }
+    /**
+     * Little endian short at current position, the position is not changed
+     * */
     public short readShort() throws IOException {
-        int pos = getPosition();
-        byte[] bts = new byte[2];
-        readFully(bts);
-        seek(pos);
-        return toShort(bts);
+        return getShort(getPosition());
     }
+    /**
+     * Little endian int at current position, the position is not changed
+     * */
     public int readInteger() throws IOException {
-        int pos = getPosition();
-        byte[] bytes = new byte[4];
-        readFully(bytes);
-        seek(pos);
-        return toInt(bytes);
+        return getInteger(getPosition());
+    }
+    /**
+     * Little endian short at the given position relative to start of this reader,
+     * reads directly from the backing array/buffer without changing current position
+     * */
+    public short getShort(int position) throws IOException {
+        return (short) getLittleEndian(position, 2);
+    }
+    /**
+     * Little endian int at the given position relative to start of this reader,
+     * reads directly from the backing array/buffer without changing current position
+     * */
+    public int getInteger(int position) throws IOException {
+        return getLittleEndian(position, 4);
+    }
+    private int getLittleEndian(int position, int size) throws IOException {
+        if(mIsClosed){
+            throw new IOException("Stream is closed");
+        }
+        if(position < 0 || position >= mLength){
+            throw new EOFException("Finished reading: " + position);
+        }
+        int actualPosition = mStart + position;
+        ByteBuffer byteBuffer = this.mByteBuffer;
+        int available = mLength - position;
+        if(available >= size){
+            if(byteBuffer != null){
+                return size == 2 ? byteBuffer.getShort(actualPosition)
+                        : byteBuffer.getInt(actualPosition);
+            }
+            byte[] buffer = this.BUFFER;
+            int result = buffer[actualPosition] & 0xff |
+                    (buffer[actualPosition + 1] & 0xff) << 8;
+            if(size == 4){
+                result |= (buffer[actualPosition + 2] & 0xff) << 16 |
+                        (buffer[actualPosition + 3] & 0xff) << 24;
+            }
+            return result;
+        }
+        // near the end, missing bytes are treated as zero
+        int result = 0;
+        for(int i = 0; i < available; i++){
+            int b = byteBuffer != null ? byteBuffer.get(actualPosition + i)
+                    : BUFFER[actualPosition + i];
+            result |= (b & 0xff) << (i * 8);
+        }
+        return result;
     }
     /**
      * Use SpecHeader#read(BlockReader)
@@ -83,29 +145,31 @@ public class BlockReader extends InputStream {
     public InfoHeader readHeaderBlock() throws IOException {
         return InfoHeader.read(this);
     }
-    private int toInt(byte[] bytes){
-        return bytes[0] & 0xff |
-                (bytes[1] & 0xff) << 8 |
-                (bytes[2] & 0xff) << 16 |
-                (bytes[3] & 0xff) << 24;
-    }
-    private short toShort(byte[] bytes){
-        return (short) (bytes[0] & 0xff |
-                (bytes[1] & 0xff) << 8);
-    }
+    /**
+     * @return backing array, or null if this reader is backed by {@link ByteBuffer}
+     * */
     public byte[] getBuffer(){
         return BUFFER;
     }
     public byte[] getBytes(){
         int len = length();
-        if(this.BUFFER.length == len){
-            return BUFFER;
+        byte[] buffer = this.BUFFER;
+        if(buffer != null && buffer.length == len){
+            return buffer;
         }
         byte[] bytes = new byte[len];
         if(len==0){
             return bytes;
         }
-        System.arraycopy(BUFFER, mStart, bytes, 0, len);
+        if(buffer == null){
+            synchronized (mLock){
+                ByteBuffer byteBuffer = this.mByteBuffer;
+                byteBuffer.position(mStart);
+                byteBuffer.get(bytes, 0, len);
+            }
+            return bytes;
+        }
+        System.arraycopy(buffer, mStart, bytes, 0, len);
         return bytes;
     }
     public BlockReader create(int len){
@@ -117,6 +181,10 @@ public class BlockReader extends InputStream {
             len = this.mLength - start;
         }
         start = start + this.mStart;
+        ByteBuffer byteBuffer = this.mByteBuffer;
+        if(byteBuffer != null){
+            return new BlockReader(byteBuffer.duplicate(), start, len);
+        }
         return new BlockReader(BUFFER, start, len);
     }
     public boolean isAvailable(){
@@ -185,6 +253,14 @@ public class BlockReader extends InputStream {
         }
         synchronized (mLock){
             int actualPosition = mStart + mPosition;
+            ByteBuffer byteBuffer = this.mByteBuffer;
+            if(byteBuffer != null){
+                int count = Math.min(length, mLength - mPosition);
+                byteBuffer.position(actualPosition);
+                byteBuffer.get(bytes, start, count);
+                mPosition += count;
+                return count;
+            }
             int i;
             for(i = 0; i < length; i++){
                 bytes[start + i] = BUFFER[actualPosition + i];
@@ -214,7 +290,9 @@ public class BlockReader extends InputStream {
         }
         synchronized (mLock){
             int actPos = mStart + i;
-            int val = BUFFER[actPos] & 0xff;
+            ByteBuffer byteBuffer = this.mByteBuffer;
+            int val = byteBuffer != null ? byteBuffer.get(actPos) & 0xff
+                    : BUFFER[actPos] & 0xff;
             mPosition ++;
             return val;
         }
@@ -243,6 +321,7 @@ public class BlockReader extends InputStream {
     public void close(){
         mIsClosed=true;
         BUFFER=null;
+        mByteBuffer=null;
         mMark=0;
     }
     @Override
@@ -106,6 +106,14 @@ public class ResXmlString extends StringItem {
         return true;
     }
 
+    @Override
+    public boolean equalsBytes(StringItem stringItem) {
+        if(!(stringItem instanceof ResXmlString) || !super.equalsBytes(stringItem)) {
+            return false;
+        }
+        return getResourceId() == ((ResXmlString) stringItem).getResourceId();
+    }
+
     @Override
     public int compareTo(StringItem stringItem){
         if(!(stringItem instanceof ResXmlString)){
@@ -23,14 +23,24 @@ import java.nio.charset.StandardCharsets;
 public abstract class StringBlock extends BlockItem implements StringReference {
 
     private String mCache;
+    private volatile boolean mDecodePending;
 
     public StringBlock() {
         super(0);
         mCache = StringsUtil.EMPTY;
     }
     public String get(){
+        if(mDecodePending){
+            decodePending();
+        }
         return mCache;
     }
+    private synchronized void decodePending(){
+        if(mDecodePending){
+            mCache = decodeString(getBytesInternal());
+            mDecodePending = false;
+        }
+    }
     public void set(String text){
         set(text, true);
     }
@@ -38,14 +48,16 @@ public abstract class StringBlock extends BlockItem implements StringReference {
         if(android.text.TextUtils.isEmpty(text)){
             text = StringsUtil.EMPTY;
         }
-        String old = this.mCache;
+        String old = null;
         boolean firstTime = countBytes() == 0;
-        if(firstTime) {
-            old = null;
-        }else if(text.equals(old)) {
-            return;
+        if(!firstTime) {
+            old = get();
+            if(text.equals(old)) {
+                return;
+            }
         }
         this.mCache = text;
+        this.mDecodePending = false;
         byte[] bytes = encodeString(text);
         setBytesInternal(bytes, false);
         if(notify){
@@ -54,6 +66,24 @@ public abstract class StringBlock extends BlockItem implements StringReference {
     }
     protected void onBytesChanged(){
         mCache = decodeString(getBytesInternal());
+        mDecodePending = false;
+    }
+    /**
+     * Same as onBytesChanged() but decoding is deferred to the first call of get(),
+     * most strings of big pools are never read as text
+     * */
+    protected void onBytesLoaded(){
+        mCache = null;
+        mDecodePending = true;
+    }
+    void copyBytes(StringBlock source){
+        setBytesInternal(source.getBytesInternal().clone(), false);
+        if(source.mDecodePending){
+            onBytesLoaded();
+        }else {
+            mCache = source.mCache;
+            mDecodePending = false;
+        }
     }
     protected void onStringChanged(String old, String text){
     }
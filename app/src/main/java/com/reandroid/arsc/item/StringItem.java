@@ -38,6 +38,7 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -84,10 +85,14 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
     }
 
     public boolean removeReference(ReferenceItem ref){
-        return mReferencedList.remove(ref);
+        synchronized (mReferencedList){
+            return mReferencedList.remove(ref);
+        }
     }
     public void removeAllReference(){
-        mReferencedList.clear();
+        synchronized (mReferencedList){
+            mReferencedList.clear();
+        }
     }
     public boolean hasReference(){
         ensureStringLinkUnlocked();
@@ -110,21 +115,23 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
     }
     public void addReference(ReferenceItem ref){
         if(ref!=null){
-            mReferencedList.add(ref);
+            synchronized (mReferencedList){
+                mReferencedList.add(ref);
+            }
         }
     }
     public void addReferenceIfAbsent(ReferenceItem ref){
-        if(ref!=null){
-            mReferencedList.add(ref);
-        }
+        addReference(ref);
     }
     public void addReference(Collection<ReferenceItem> refList){
         if(refList == null){
             return;
         }
-        for(ReferenceItem ref:refList){
-            if(ref != null){
-                this.mReferencedList.add(ref);
+        synchronized (mReferencedList){
+            for(ReferenceItem ref:refList){
+                if(ref != null){
+                    this.mReferencedList.add(ref);
+                }
             }
         }
     }
@@ -257,7 +264,7 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
         }
         setBytesLength(calculateReadLength(reader), false);
         reader.readFully(getBytesInternal());
-        onBytesChanged();
+        onBytesLoaded();
     }
     int calculateReadLength(BlockReader reader) throws IOException {
         if(reader.available() < 4){
@@ -308,7 +315,10 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
         }
         try {
             ByteBuffer buf=ByteBuffer.wrap(allStringBytes, offLen[0], offLen[1]);
-            CharBuffer charBuffer=charsetDecoder.decode(buf);
+            CharBuffer charBuffer;
+            synchronized (charsetDecoder){
+                charBuffer=charsetDecoder.decode(buf);
+            }
             return charBuffer.toString();
         } catch (CharacterCodingException ex) {
             if(isUtf8){
@@ -320,7 +330,10 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
     private String tryThreeByteDecoder(byte[] bytes, int offset, int length){
         try {
             ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, offset, length);
-            CharBuffer charBuffer = DECODER_3B.decode(byteBuffer);
+            CharBuffer charBuffer;
+            synchronized (DECODER_3B){
+                charBuffer = DECODER_3B.decode(byteBuffer);
+            }
             return charBuffer.toString();
         } catch (CharacterCodingException e) {
             return new String(bytes, offset, length, StandardCharsets.UTF_8);
@@ -398,6 +411,15 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
         if(!canMerge(other)) {
             return false;
         }
+        if(!other.hasStyle() && isUtf8() == other.isUtf8()) {
+            clearStyle();
+            copyBytes(other);
+            StringPool<StringItem> stringPool = getParentInstance(StringPool.class);
+            if(stringPool != null) {
+                stringPool.onStringChanged(null, this);
+            }
+            return true;
+        }
         clearStyle();
         set(other.get(), false);
         StyleItem otherStyle = other.getStyle();
@@ -407,6 +429,30 @@ public class StringItem extends StringBlock implements JSONConvert<JSONObject>,
         onStringChanged(null, getXml());
         return true;
     }
+    public int hashBytes() {
+        return Arrays.hashCode(getBytesInternal());
+    }
+    /**
+     * Compares encoded bytes and style spans without decoding, equal items
+     * are also equal as text but not necessarily the reverse
+     * */
+    public boolean equalsBytes(StringItem stringItem) {
+        if(stringItem == this) {
+            return true;
+        }
+        if(!equalsRawBytes(stringItem)) {
+            return false;
+        }
+        boolean hasStyle = hasStyle();
+        if(hasStyle != stringItem.hasStyle()) {
+            return false;
+        }
+        return !hasStyle || getStyle().equalsBytes(stringItem.getStyle());
+    }
+    boolean equalsRawBytes(StringItem stringItem) {
+        return stringItem != null && isUtf8() == stringItem.isUtf8()
+                && Arrays.equals(getBytesInternal(), stringItem.getBytesInternal());
+    }
     boolean canMerge(StringItem stringItem) {
         if(stringItem == null || stringItem == this) {
             return false;
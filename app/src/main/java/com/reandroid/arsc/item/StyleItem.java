@@ -230,9 +230,36 @@ public class StyleItem extends FixedBlockContainer implements
             return;
         }
         for(StyleSpan styleSpan : styleItem){
-            add(styleSpan.getString(), styleSpan.getFirstChar(), styleSpan.getLastChar());
+            createNext().merge(styleSpan);
         }
     }
+    boolean equalsBytes(StyleItem styleItem){
+        if(styleItem == this){
+            return true;
+        }
+        int size = size();
+        if(styleItem == null || size != styleItem.size()){
+            return false;
+        }
+        for(int i = 0; i < size; i++){
+            StyleSpan span1 = get(i);
+            StyleSpan span2 = styleItem.get(i);
+            if(span1.getFirstChar() != span2.getFirstChar()
+                    || span1.getLastChar() != span2.getLastChar()){
+                return false;
+            }
+            StringItem tag1 = span1.getStringItem();
+            StringItem tag2 = span2.getStringItem();
+            if(tag1 == null || tag2 == null){
+                if(tag1 != tag2){
+                    return false;
+                }
+            }else if(!tag1.equalsRawBytes(tag2)){
+                return false;
+            }
+        }
+        return true;
+    }
 
     @Override
     public int compareTo(StyleItem styleItem) {
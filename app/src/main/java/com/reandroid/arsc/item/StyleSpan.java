@@ -40,6 +40,19 @@ public class StyleSpan extends BlockItem implements Span, JSONConvert<JSONObject
     public void setString(String value) {
         stringReference.setString(value);
     }
+    StringItem getStringItem(){
+        return stringReference.getStringItem();
+    }
+    void merge(StyleSpan styleSpan){
+        StringItem stringItem = styleSpan.getStringItem();
+        if(stringItem != null){
+            stringReference.setString(stringItem);
+        }else {
+            setString(null);
+        }
+        setFirstChar(styleSpan.getFirstChar());
+        setLastChar(styleSpan.getLastChar());
+    }
     @Override
     public int getFirstChar() {
         return firstChar.get();
@@ -112,6 +125,16 @@ public class StyleSpan extends BlockItem implements Span, JSONConvert<JSONObject
             set(stringItem.getIndex());
             stringItem.addReference(this);
         }
+        void setString(StringItem value) {
+            unlink();
+            StringPool<?> stringPool = getStringPool();
+            StringItem stringItem = stringPool.getByBytes(value);
+            if(stringItem == null){
+                stringItem = stringPool.getOrCreate(value.get());
+            }
+            set(stringItem.getIndex());
+            stringItem.addReference(this);
+        }
         public void link(){
             StringItem stringItem = getStringItem();
             if(stringItem != null){
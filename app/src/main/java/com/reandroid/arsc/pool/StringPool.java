@@ -52,6 +52,9 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
     private final StyleArray mArrayStyles;
 
     private final MultiMap<String, T> poolMap;
+    private final MultiMap<Integer, T> bytesMap;
+    private boolean poolMapLoaded;
+    private boolean bytesMapLoaded;
     private boolean stringLinkLocked;
 
     StringPool(boolean is_utf8, boolean stringLinkLocked){
@@ -92,6 +95,7 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
             }
             return i;
         });
+        this.bytesMap = new MultiMap<>();
     }
     StringPool(boolean is_utf8){
         this(is_utf8, true);
@@ -113,7 +117,7 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
     public void clear(){
         getStyleArray().clear();
         getStringsArray().clear();
-        poolMap.clear();
+        clearPoolMaps();
     }
     /**
      * Use clear()
@@ -136,7 +140,6 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
             }
             stringLinkLocked = false;
             linkStrings();
-            reloadPoolMap();
         }
     }
     void linkStrings(){
@@ -174,15 +177,38 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
             createNewString(str);
         }
     }
-    private void reloadPoolMap() {
-        if(poolMap.size() == 0) {
+    /**
+     * Text lookup map is built on first use, building it decodes every string of the pool
+     * */
+    private void ensurePoolMapLoaded() {
+        synchronized (mLock){
+            if(!poolMapLoaded) {
+                poolMap.clear();
+                poolMap.setInitialSize(size());
+                poolMap.putAll(StringItem::getXml, iterator());
+                poolMapLoaded = true;
+            }
+        }
+    }
+    private void ensureBytesMapLoaded() {
+        if(!bytesMapLoaded) {
+            bytesMap.clear();
+            bytesMap.setInitialSize(size());
+            bytesMap.putAll(StringItem::hashBytes, iterator());
+            bytesMapLoaded = true;
+        }
+    }
+    private void clearPoolMaps() {
+        synchronized (mLock){
             poolMap.clear();
-            poolMap.setInitialSize(size());
-            poolMap.putAll(StringItem::getXml, iterator());
+            bytesMap.clear();
+            poolMapLoaded = false;
+            bytesMapLoaded = false;
         }
     }
     public void compressDuplicates(){
         ensureStringLinkUnlockedInternal();
+        ensurePoolMapLoaded();
         poolMap.findDuplicates(CompareUtil.getComparableComparator(), list -> {
             T first = list.get(0);
             for(int i = 1; i < list.size(); i++) {
@@ -218,16 +244,27 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
         return null;
     }
     public boolean contains(String str){
+        ensurePoolMapLoaded();
         return poolMap.containsKey(str);
     }
     public void onStringChanged(String old, T stringItem) {
-        if(!stringLinkLocked){
-            poolMap.updateKey(old, stringItem.getXml(), stringItem);
+        synchronized (mLock){
+            if(bytesMapLoaded){
+                bytesMap.put(stringItem.hashBytes(), stringItem);
+            }
+            if(!stringLinkLocked && poolMapLoaded){
+                poolMap.updateKey(old, stringItem.getXml(), stringItem);
+            }
         }
     }
     public void onStringRemoved(T stringItem) {
-        if(!stringLinkLocked) {
-            poolMap.remove(stringItem.getXml(), stringItem);
+        synchronized (mLock){
+            if(bytesMapLoaded){
+                bytesMap.remove(stringItem.hashBytes(), stringItem);
+            }
+            if(!stringLinkLocked && poolMapLoaded) {
+                poolMap.remove(stringItem.getXml(), stringItem);
+            }
         }
     }
     public final T getLast(){
@@ -243,12 +280,41 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
     }
     public final Iterator<T> getAll(String str){
         ensureStringLinkUnlockedInternal();
+        ensurePoolMapLoaded();
         return poolMap.getAll(str);
     }
     public final T get(String str, Predicate<? super T> predicate){
         ensureStringLinkUnlockedInternal();
+        ensurePoolMapLoaded();
         return poolMap.get(str, predicate);
     }
+    /**
+     * Finds string of this pool having the same encoded bytes and styles as the given item
+     * (usually of other pool), strings are compared without being decoded.
+     * Returns null if not found, in which case a text equal string may still exist.
+     * */
+    public final T getByBytes(StringItem stringItem){
+        if(stringItem == null){
+            return null;
+        }
+        synchronized (mLock){
+            ensureBytesMapLoaded();
+            T result = null;
+            Iterator<T> iterator = bytesMap.getAll(stringItem.hashBytes());
+            while (iterator.hasNext()){
+                T item = iterator.next();
+                int index = item.getIndex();
+                if(index < 0 || item.getParent() == null
+                        || (result != null && index > result.getIndex())){
+                    continue;
+                }
+                if(item.equalsBytes(stringItem)){
+                    result = item;
+                }
+            }
+            return result;
+        }
+    }
     public final T getString(String str){
         return CollectionUtil.getFirst(getAll(str));
     }
@@ -259,23 +325,27 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
         }
         String key = str;
 
-        T item = get(str, stringItem -> key.equals(stringItem.getXml()));
-        if(item == null) {
-            item = createNewString(str);
-            poolMap.put(str, item);
+        synchronized (mLock){
+            T item = get(str, stringItem -> key.equals(stringItem.getXml()));
+            if(item == null) {
+                item = createNewString(str);
+                poolMap.put(str, item);
+            }
+            return item;
         }
-        return item;
     }
     public T getOrCreate(StyleDocument styleDocument) {
         ensureStringLinkUnlockedInternal();
         String xml = styleDocument.getXml();
-        T item = get(xml, StringItem::hasStyle);
-        if(item != null) {
+        synchronized (mLock){
+            T item = get(xml, StringItem::hasStyle);
+            if(item != null) {
+                return item;
+            }
+            item = createNewString();
+            item.set(styleDocument);
             return item;
         }
-        item = createNewString();
-        item.set(styleDocument);
-        return item;
     }
     public T getOrCreate(JSONObject jsonObject) {
         ensureStringLinkUnlockedInternal();
@@ -336,6 +406,7 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
             return;
         }
         mArrayStrings.setUtf8(is_utf8);
+        clearPoolMaps();
     }
     public void setFlagSorted(boolean sorted){
         getHeaderBlock().setSorted(sorted);
@@ -350,7 +421,7 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
     @Override
     public void onChunkLoaded() {
         linkStylesInternal();
-        reloadPoolMap();
+        clearPoolMaps();
     }
 
     @Override
@@ -386,6 +457,7 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
     }
 
     boolean containsInternal(T item) {
+        ensurePoolMapLoaded();
         return poolMap.containsValue(item.getXml(),
                 stringItem -> stringItem.compareTo(item) == 0);
     }
@@ -394,8 +466,17 @@ public abstract class StringPool<T extends StringItem> extends Chunk<StringPoolH
             return;
         }
         ensureStringLinkUnlockedInternal();
+        mArrayStrings.ensureCapacity(size() + stringPool.size());
+        // Same encoding: compare and copy as bytes, strings are decoded only if styled
+        boolean sameEncoding = isUtf8() == stringPool.isUtf8();
         for (T stringItem : stringPool) {
-            if(!containsInternal(stringItem)) {
+            boolean exists;
+            if(sameEncoding) {
+                exists = getByBytes(stringItem) != null;
+            }else {
+                exists = containsInternal(stringItem);
+            }
+            if(!exists) {
                 createNewString().merge(stringItem);
             }
         }
@@ -606,10 +606,7 @@ public class Entry extends Block implements JSONConvert<JSONObject> {
         this.mTableEntry = null;
     }
     private TableEntry<?, ?> createTableEntry(BlockReader reader) throws IOException {
-        int startPosition = reader.getPosition();
-        reader.offset(2);
-        boolean is_complex = (0x0001 & reader.readShort()) == 0x0001;
-        reader.seek(startPosition);
+        boolean is_complex = (0x0001 & reader.getShort(reader.getPosition() + 2)) == 0x0001;
         return createTableEntry(is_complex);
     }
     private TableEntry<?, ?> createTableEntry(boolean is_complex) {
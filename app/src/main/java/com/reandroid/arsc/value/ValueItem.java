@@ -375,7 +375,11 @@ public abstract class ValueItem extends BlockItem implements Value,
         ValueType coming = valueItem.getValueType();
         if(coming == ValueType.STRING) {
             StringItem stringItem = valueItem.getDataAsPoolString();
-            if(stringItem != null) {
+            StringItem exist = getStringPool().getByBytes(stringItem);
+            if(exist != null) {
+                setData(exist.getIndex());
+                setValueType(ValueType.STRING);
+            }else if(stringItem != null) {
                 StyleDocument document = stringItem.getStyleDocument();
                 if(document != null) {
                     setValueAsString(document);
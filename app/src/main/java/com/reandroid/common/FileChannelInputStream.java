@@ -17,6 +17,7 @@ package com.reandroid.common;
 
 import com.abdurazaaqmohammed.AntiSplit.main.LegacyUtils;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +32,7 @@ public class FileChannelInputStream extends InputStream {
     private final FileChannel fileChannel;
     private final long totalLength;
     private long startOffset;
+    private long markOffset;
     private long position;
     private final byte[] buffer;
     private int bufferPosition;
@@ -46,6 +48,7 @@ public class FileChannelInputStream extends InputStream {
         this.bufferLength = bufferSize;
         this.bufferPosition = bufferSize;
         this.startOffset = fileChannel.position();
+        this.markOffset = startOffset;
     }
     public FileChannelInputStream(FileChannel fileChannel, long length, int bufferSize) throws IOException {
         this.fileChannel = fileChannel;
@@ -60,10 +63,33 @@ public class FileChannelInputStream extends InputStream {
         this.bufferLength = bufferSize;
         this.bufferPosition = bufferSize;
         this.startOffset = fileChannel.position();
+        this.markOffset = startOffset;
     }
     public FileChannelInputStream(FileChannel fileChannel, long length) throws IOException {
         this(fileChannel, length, DEFAULT_BUFFER_SIZE);
     }
+    /**
+     * Reads the given region using positional reads, position of the channel is never changed
+     * thus multiple streams can share the same channel concurrently
+     * */
+    public FileChannelInputStream(FileChannel fileChannel, long offset, long length, int bufferSize) {
+        this.fileChannel = fileChannel;
+        this.totalLength = length;
+        if(bufferSize <= 0){
+            bufferSize = 8;
+        }
+        if(length < bufferSize){
+            bufferSize = (int) length;
+        }
+        this.buffer = new byte[bufferSize];
+        this.bufferLength = bufferSize;
+        this.bufferPosition = bufferSize;
+        this.startOffset = offset;
+        this.markOffset = offset;
+    }
+    public FileChannelInputStream(FileChannel fileChannel, long offset, long length) {
+        this(fileChannel, offset, length, DEFAULT_BUFFER_SIZE);
+    }
     public FileChannelInputStream(File file, long length, int bufferSize) throws IOException {
         this(LegacyUtils.supportsFileChannel ?
                 FileChannel.open(file.toPath(), StandardOpenOption.READ) : new RandomAccessFile(file, "r").getChannel(), length, bufferSize);
@@ -134,9 +160,13 @@ public class FileChannelInputStream extends InputStream {
             is_last = true;
         }
         ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
-        bufferLength = fileChannel.read(byteBuffer);
+        int read = fileChannel.read(byteBuffer, startOffset + position);
+        if(read < 0){
+            throw new EOFException("Unexpected end of channel: " + this);
+        }
+        bufferLength = read;
         bufferPosition = 0;
-        if(is_last){
+        if(is_last && read == length){
             closeAuto();
         }
     }
@@ -192,7 +222,6 @@ public class FileChannelInputStream extends InputStream {
         position += availableChannel;
         remaining = remaining - availableChannel;
         amount = amount - remaining;
-        fileChannel.position(fileChannel.position() + availableChannel);
         return amount;
     }
     private int skipBuffer(long amount){
@@ -226,7 +255,7 @@ public class FileChannelInputStream extends InputStream {
     public void reset() throws IOException {
         position = 0;
         bufferPosition = bufferLength;
-        fileChannel.position(startOffset);
+        startOffset = markOffset;
     }
     @Override
     public int available(){
@@ -241,7 +270,7 @@ public class FileChannelInputStream extends InputStream {
         if(readLimit < 0){
             readLimit = 0;
         }
-        startOffset = readLimit;
+        markOffset = readLimit;
     }
     @Override
     public String toString(){
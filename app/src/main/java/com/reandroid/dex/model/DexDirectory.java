@@ -44,6 +44,7 @@ public class DexDirectory implements Iterable<DexFile>, Closeable,
     public DexDirectory() {
         this.dexSourceSet = new DexFileSourceSet();
         this.externalTypeKeyReferenceList = new ArrayCollection<>();
+        this.dexSourceSet.setDexDirectory(this);
     }
 
     public Object getTag() {
@@ -415,28 +416,26 @@ public class DexDirectory implements Iterable<DexFile>, Closeable,
         }
     }
     public void updateDexFileList(){
-        for(DexFile dexFile : this){
-            dexFile.setDexDirectory(this);
+        // Dex files loaded later are linked by the source set
+        Iterator<DexFile> iterator = dexSourceSet.getLoadedDexFiles();
+        while (iterator.hasNext()){
+            iterator.next().setDexDirectory(this);
         }
     }
     public void addDirectory(File dir) throws IOException {
         getDexSourceSet().addAll(dir);
-        for(DexFile dexFile : this){
-            dexFile.setDexDirectory(this);
-        }
+        updateDexFileList();
     }
     public void addApk(ZipEntryMap zipEntryMap) throws IOException {
         addZip(zipEntryMap, "");
     }
     public void addZip(ZipEntryMap zipEntryMap, String root) throws IOException {
         getDexSourceSet().addAll(zipEntryMap, root);
-        for(DexFile dexFile : this){
-            dexFile.setDexDirectory(this);
-        }
+        updateDexFileList();
     }
     public void addFile(File file) throws IOException {
         DexSource<DexFile> source = getDexSourceSet().add(file);
-        if(file.isFile()){
+        if(file.isFile() && source.get() != null){
             source.get().setDexDirectory(this);
         }
     }
@@ -809,13 +808,7 @@ public class DexDirectory implements Iterable<DexFile>, Closeable,
         return dexSourceSet.getDexFile(i);
     }
     public int indexOf(DexFile dexFile){
-        int size = size();
-        for(int i = 0; i < size; i++){
-            if(dexFile == get(i)){
-                return i;
-            }
-        }
-        return -1;
+        return dexSourceSet.indexOf(dexFile);
     }
     public int size() {
         return dexSourceSet.size();
@@ -823,14 +816,14 @@ public class DexDirectory implements Iterable<DexFile>, Closeable,
     public DexFile getFirst(){
         DexSource<DexFile> source = dexSourceSet.getFirst();
         if(source != null){
-            return source.get();
+            return dexSourceSet.getDexFile(source);
         }
         return null;
     }
     public DexFile getLast(){
         DexSource<DexFile> source = dexSourceSet.getLast();
         if(source != null){
-            return source.get();
+            return dexSourceSet.getDexFile(source);
         }
         return null;
     }
@@ -859,6 +852,15 @@ public class DexDirectory implements Iterable<DexFile>, Closeable,
             dexFile.writeSmali(writer, root);
         }
     }
+    /**
+     * Writes dex files one after another, classes of each are written in parallel,
+     * see {@link DexFile#writeSmali(SmaliWriter, File, int)}
+     * */
+    public void writeSmali(SmaliWriter writer, File root, int jobs) throws IOException {
+        for(DexFile dexFile : this){
+            dexFile.writeSmali(writer, root, jobs);
+        }
+    }
 
     @Override
     public String toString() {
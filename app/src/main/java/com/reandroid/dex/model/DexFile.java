@@ -33,6 +33,7 @@ import com.reandroid.dex.pool.DexSectionPool;
 import com.reandroid.dex.sections.*;
 import com.reandroid.dex.smali.SmaliReader;
 import com.reandroid.dex.smali.SmaliWriter;
+import com.reandroid.dex.smali.SmaliWriterSetting;
 import com.reandroid.dex.smali.model.SmaliClass;
 import com.reandroid.utils.collection.*;
 import com.reandroid.utils.io.FileByteSource;
@@ -40,8 +41,14 @@ import com.reandroid.utils.io.FileIterator;
 import com.reandroid.utils.io.FileUtil;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 public class DexFile implements DexClassRepository, Closeable,
@@ -49,6 +56,7 @@ public class DexFile implements DexClassRepository, Closeable,
 
     private final DexLayout dexLayout;
     private DexDirectory dexDirectory;
+    private DexSource<DexFile> dexSource;
     private boolean closed;
 
     public DexFile(DexLayout dexLayout){
@@ -105,6 +113,17 @@ public class DexFile implements DexClassRepository, Closeable,
         dexLayout.setSimpleName(getSimpleName());
     }
 
+    /**
+     * Source this dex file was loaded from by {@link DexFileSourceSet}, stays set after
+     * the source drops the dex file on eviction
+     * */
+    DexSource<DexFile> getDexSource() {
+        return dexSource;
+    }
+    void setDexSource(DexSource<DexFile> dexSource) {
+        this.dexSource = dexSource;
+    }
+
     public Iterator<DexClass> getSubTypes(TypeKey typeKey){
         return ComputeIterator.of(getSubTypeIds(typeKey), this::create);
     }
@@ -421,6 +440,67 @@ public class DexFile implements DexClassRepository, Closeable,
             dexClass.writeSmali(writer, dir);
         }
     }
+    /**
+     * Same output as {@link #writeSmali(SmaliWriter, File)}, classes are written by the given
+     * number of workers each having own {@link SmaliWriter} with the setting of writer.
+     * The dex file must not be modified while writing.
+     * */
+    public void writeSmali(SmaliWriter writer, File root, int jobs) throws IOException {
+        requireNotClosed();
+        if(jobs < 2){
+            writeSmali(writer, root);
+            return;
+        }
+        File dir = new File(root, buildSmaliDirectoryName());
+        List<DexClass> classList = CollectionUtil.toList(getDexClasses());
+        int size = classList.size();
+        if(jobs > size){
+            jobs = size;
+        }
+        if(jobs < 2){
+            for(DexClass dexClass : classList){
+                dexClass.writeSmali(writer, dir);
+            }
+            return;
+        }
+        SmaliWriterSetting setting = writer.getWriterSetting();
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            List<Future<?>> futureList = new ArrayList<>(jobs);
+            for(int i = 0; i < jobs; i++){
+                futureList.add(executor.submit(() -> {
+                    SmaliWriter worker = new SmaliWriter();
+                    worker.setWriterSetting(setting);
+                    int index;
+                    while ((index = next.getAndIncrement()) < size){
+                        classList.get(index).writeSmali(worker, dir);
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> future : futureList){
+                future.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing smali");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
     public String buildSmaliDirectoryName() {
         DexDirectory dexDirectory = getDexDirectory();
         if(dexDirectory == null) {
@@ -430,12 +510,11 @@ public class DexFile implements DexClassRepository, Closeable,
             }
             return "classes";
         }
-        int i = 0;
-        for(DexFile dexFile : dexDirectory){
-            if(dexFile == this){
-                break;
-            }
-            i++;
+        // Found by its source also when evicted from a lazy directory, not found only if
+        // the dex file is not part of the directory
+        int i = dexDirectory.indexOf(this);
+        if(i < 0){
+            i = dexDirectory.size();
         }
         if(i == 0){
             return "classes";
@@ -17,15 +17,28 @@ package com.reandroid.dex.model;
 
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.ZipEntryMap;
+import com.reandroid.arsc.io.BlockReader;
 import com.reandroid.utils.CompareUtil;
 import com.reandroid.utils.collection.ArrayCollection;
 import com.reandroid.utils.collection.ComputeIterator;
+import com.reandroid.utils.collection.FilterIterator;
 import com.reandroid.utils.io.FileUtil;
+import com.reandroid.utils.io.IOUtil;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 
 public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable {
@@ -33,9 +46,93 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
     private final ArrayCollection<DexSource<DexFile>> sourceList;
     private boolean mReadStringsMode;
     private ZipEntryMap zipEntryMap;
+    private int threadCount;
+    private DexDirectory dexDirectory;
+    private long memoryBudget;
+    private long loadedMemory;
+    private boolean readOnly;
+    private final Map<DexSource<DexFile>, Long> loadedMap;
+    private final Map<DexSource<DexFile>, File> savedMap;
 
     public DexFileSourceSet(){
         this.sourceList = new ArrayCollection<>();
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.loadedMap = new LinkedHashMap<>(16, 0.75f, true);
+        this.savedMap = new HashMap<>();
+    }
+
+    void setDexDirectory(DexDirectory dexDirectory) {
+        this.dexDirectory = dexDirectory;
+    }
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+    /**
+     * Approximate heap in bytes for loaded dex files, zero or negative loads every dex file
+     * when added. When set, dex files are loaded on first access and the least recently used
+     * ones are dropped once {@link #estimateMemory(long)} of the loaded files exceeds the
+     * budget; the most recently accessed file is always kept. A dropped file is read again
+     * from its source on next access, or from the temporary file it was saved to before
+     * eviction, see {@link #setReadOnly(boolean)}.
+     * */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    public boolean isLazy() {
+        return memoryBudget > 0;
+    }
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+    /**
+     * By default a lazy set writes each evicted dex file to a temporary file, so changes
+     * are kept. If the loaded dex files are not modified, or each modification is followed
+     * by {@link #saveModified(DexFile)}, set true to drop evicted files without writing.
+     * */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+    /**
+     * Refreshes and writes the dex file to a temporary file, which replaces its source when
+     * the dex file is loaded again after eviction. Does nothing if this set is not lazy.
+     * */
+    public void saveModified(DexFile dexFile) throws IOException {
+        if(!isLazy()){
+            return;
+        }
+        DexSource<DexFile> source = getSource(dexFile);
+        if(source == null){
+            throw new IOException("Dex file not in this set: " + dexFile);
+        }
+        synchronized (loadedMap){
+            writeSaved(source, dexFile);
+        }
+    }
+    // Called holding the loadedMap lock
+    private void writeSaved(DexSource<DexFile> source, DexFile dexFile) throws IOException {
+        dexFile.refresh();
+        File file = savedMap.get(source);
+        if(file == null){
+            file = File.createTempFile("classes", ".dex", FileUtil.getTempDir());
+            file.deleteOnExit();
+            savedMap.put(source, file);
+        }
+        dexFile.write(file);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Number of threads used to read dex files added by addAll methods, each dex file is
+     * parsed independently and sources are registered in order once all are read.
+     * Values less than 2 reads on the calling thread.
+     * */
+    public void setThreadCount(int threadCount) {
+        if(threadCount < 1){
+            threadCount = 1;
+        }
+        this.threadCount = threadCount;
     }
 
     public ZipEntryMap getZipEntryMap() {
@@ -50,11 +147,11 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
             throw new IllegalArgumentException("Cyclic merge");
         }
         for(DexSource<DexFile> coming : sourceSet){
-            if(isEmpty(coming)){
+            if(sourceSet.isEmpty(coming)){
                 continue;
             }
             DexSource<DexFile> source = createNext();
-            source.set(coming.get());
+            source.set(sourceSet.getDexFile(coming));
             try {
                 save(source);
             } catch (IOException exception) {
@@ -77,7 +174,7 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
             DexSource<DexFile> source = iterator.next();
             File file = new File(dir, source.getSimpleName());
             DexSource<DexFile> dexSource = DexSource.create(file);
-            dexSource.set(source.get());
+            dexSource.set(getDexFile(source));
             if(isEmpty(dexSource)){
                 dexSource.delete();
             }else {
@@ -92,6 +189,19 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         }
     }
     private void save(DexSource<DexFile> source) throws IOException {
+        if(source.get() == null && isLazy()){
+            // Not loaded files are unchanged since read or since saveModified
+            File file = savedMap.get(source);
+            if(file == null){
+                return;
+            }
+            if(file.length() == 0){
+                delete(source);
+            }else {
+                source.write(IOUtil.readFully(file));
+            }
+            return;
+        }
         if(isEmpty(source)){
             delete(source);
             return;
@@ -100,14 +210,21 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         source.write(dexFile.getBytes());
     }
     private boolean isEmpty(DexSource<DexFile> source){
-        DexFile dexFile = source.get();
+        DexFile dexFile = getDexFile(source);
         return dexFile == null || dexFile.isEmpty();
     }
     public Iterator<DexFile> getClonedDexFiles() {
-        return ComputeIterator.of(clonedIterator(), DexSource::get);
+        return ComputeIterator.of(clonedIterator(), this::getDexFile);
     }
     public Iterator<DexFile> getDexFiles() {
-        return ComputeIterator.of(iterator(), DexSource::get);
+        return ComputeIterator.of(iterator(), this::getDexFile);
+    }
+    /**
+     * Dex files currently in memory, does not load any
+     * */
+    public Iterator<DexFile> getLoadedDexFiles() {
+        return FilterIterator.of(ComputeIterator.of(clonedIterator(), DexSource::get),
+                dexFile -> dexFile != null);
     }
     @Override
     public Iterator<DexSource<DexFile>> iterator() {
@@ -143,9 +260,14 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         addAll(zipEntryMap, zipEntryMap.iterator(filter));
     }
     public void addAll(ZipEntryMap zipEntryMap, Iterator<InputSource> iterator) throws IOException {
+        List<DexSource<DexFile>> sources = new ArrayList<>();
         while (iterator.hasNext()){
-            add(zipEntryMap, iterator.next().getAlias());
+            sources.add(DexSource.create(zipEntryMap, iterator.next().getAlias()));
+        }
+        if(getZipEntryMap() == null){
+            setZipEntryMap(zipEntryMap);
         }
+        addAll(sources);
     }
     public void add(ZipEntryMap zipEntryMap, InputSource inputSource) throws IOException {
         String name = inputSource.getAlias();
@@ -174,6 +296,7 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         if(files == null){
             return;
         }
+        List<DexSource<DexFile>> sources = new ArrayList<>();
         for(File file : files){
             if(!file.isFile()){
                 continue;
@@ -181,7 +304,16 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
             if(DexFile.getDexFileNumber(file.getName()) < 0){
                 continue;
             }
-            add(file);
+            sources.add(DexSource.create(file));
+        }
+        addAll(sources);
+    }
+    private void addAll(List<DexSource<DexFile>> sources) throws IOException {
+        if(!isLazy()){
+            loadAll(sources);
+        }
+        for(DexSource<DexFile> source : sources){
+            add(source);
         }
     }
     public DexSource<DexFile> add(File file) throws IOException {
@@ -191,12 +323,16 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         DexSource<DexFile> exist = sourceList.getElement(source);
         if(exist != null){
             if(exist == source){
-                load(source);
+                if(!isLazy()){
+                    load(source);
+                }
                 return exist;
             }
             throw new IOException("Duplicate dex source: " + source);
         }
-        load(source);
+        if(!isLazy()){
+            load(source);
+        }
         sourceList.remove(source);
         sourceList.add(source);
         sourceList.sort(CompareUtil.getComparableComparator());
@@ -206,15 +342,60 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
         if(index < 0 || index >= size()){
             return null;
         }
-        return getSource(index).get();
+        return getDexFile(getSource(index));
+    }
+    /**
+     * Returns dex file of the source, loading it first if this set {@link #isLazy()}.
+     * Safe to call from multiple threads, e.g. by comment lookups of parallel smali writing.
+     * */
+    public DexFile getDexFile(DexSource<DexFile> source){
+        if(source == null){
+            return null;
+        }
+        if(!isLazy()){
+            return source.get();
+        }
+        synchronized (loadedMap){
+            DexFile dexFile = source.get();
+            if(dexFile == null && !source.isClosed()){
+                try {
+                    load(source);
+                    dexFile = source.get();
+                    evictExceeding(source);
+                } catch (IOException exception) {
+                    throw new RuntimeException(exception);
+                }
+            }else {
+                // Marks as recently used
+                loadedMap.get(source);
+            }
+            return dexFile;
+        }
+    }
+    /**
+     * Index of the dex file, also found when it is evicted from a lazy set
+     * */
+    public int indexOf(DexFile dexFile){
+        if(dexFile != null){
+            DexSource<DexFile> dexSource = dexFile.getDexSource();
+            int size = size();
+            for(int i = 0; i < size; i++){
+                DexSource<DexFile> source = getSource(i);
+                if(source == dexSource || dexFile == source.get()){
+                    return i;
+                }
+            }
+        }
+        return -1;
     }
     public DexSource<DexFile> getSource(int index){
         return sourceList.get(index);
     }
     public DexSource<DexFile> getSource(DexFile dexFile){
         if(dexFile != null){
+            DexSource<DexFile> dexSource = dexFile.getDexSource();
             for(DexSource<DexFile> source : this){
-                if(dexFile == source.get()){
+                if(source == dexSource || dexFile == source.get()){
                     return source;
                 }
             }
@@ -264,7 +445,14 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
     }
     public void remove(DexSource<DexFile> dexSource){
         sourceList.remove(dexSource);
-        dexSource.set(null);
+        synchronized (loadedMap){
+            dexSource.set(null);
+            deleteSaved(dexSource);
+            Long memory = loadedMap.remove(dexSource);
+            if(memory != null){
+                loadedMemory -= memory;
+            }
+        }
     }
     @Override
     public void close() throws IOException {
@@ -272,6 +460,18 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
             dexSource.close();
         }
         sourceList.clear();
+        loadedMap.clear();
+        for(File file : savedMap.values()){
+            file.delete();
+        }
+        savedMap.clear();
+        loadedMemory = 0;
+    }
+    private void deleteSaved(DexSource<DexFile> dexSource){
+        File file = savedMap.remove(dexSource);
+        if(file != null){
+            file.delete();
+        }
     }
 
     public boolean isReadStringsMode() {
@@ -280,22 +480,110 @@ public class DexFileSourceSet implements Iterable<DexSource<DexFile>>, Closeable
     public void setReadStringsMode(boolean readStringsMode) {
         this.mReadStringsMode = readStringsMode;
     }
+    private void loadAll(List<DexSource<DexFile>> sources) throws IOException {
+        int threadCount = Math.min(getThreadCount(), sources.size());
+        if(threadCount < 2){
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futureList = new ArrayList<>(sources.size());
+            for(DexSource<DexFile> source : sources){
+                futureList.add(executor.submit(() -> {
+                    load(source);
+                    return null;
+                }));
+            }
+            for(Future<?> future : futureList){
+                future.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading dex files");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
     private void load(DexSource<DexFile> dexSource) throws IOException {
         DexFile dexFile = dexSource.get();
         if(dexFile != null){
             return;
         }
-        if(mReadStringsMode){
-            dexFile = DexFile.readStrings(dexSource.openStream());
+        File saved = savedMap.get(dexSource);
+        long length;
+        if(saved != null && saved.length() == 0){
+            length = 0;
+            dexFile = DexFile.createDefault();
         }else {
-            dexFile = DexFile.read(dexSource.openStream());
+            BlockReader reader;
+            if(saved != null){
+                reader = new BlockReader(saved);
+            }else {
+                reader = dexSource.openBlockReader();
+            }
+            length = reader.length();
+            if(mReadStringsMode){
+                dexFile = DexFile.readStrings(reader);
+            }else {
+                dexFile = DexFile.read(reader);
+            }
         }
         dexSource.set(dexFile);
+        dexFile.setDexSource(dexSource);
         dexFile.setSimpleName(dexSource.toString());
+        DexDirectory dexDirectory = this.dexDirectory;
+        if(dexDirectory != null){
+            dexFile.setDexDirectory(dexDirectory);
+        }
+        if(isLazy()){
+            long memory = estimateMemory(length);
+            loadedMap.put(dexSource, memory);
+            loadedMemory += memory;
+        }
+    }
+    // Called holding the loadedMap lock
+    private void evictExceeding(DexSource<DexFile> keep) throws IOException {
+        long budget = getMemoryBudget();
+        Iterator<Map.Entry<DexSource<DexFile>, Long>> iterator = loadedMap.entrySet().iterator();
+        while (loadedMemory > budget && iterator.hasNext()){
+            Map.Entry<DexSource<DexFile>, Long> entry = iterator.next();
+            DexSource<DexFile> source = entry.getKey();
+            if(source == keep){
+                continue;
+            }
+            if(!isReadOnly()){
+                // Written before dropped, changes are kept in the saved file
+                writeSaved(source, source.get());
+            }
+            iterator.remove();
+            loadedMemory -= entry.getValue();
+            // The dex file is read again from its source or saved file
+            source.set(null);
+        }
+    }
+    /**
+     * Approximate heap used by a loaded dex file of the given size in bytes
+     * */
+    public static long estimateMemory(long dexLength){
+        return dexLength * DEX_HEAP_FACTOR;
     }
 
     @Override
     public String toString() {
         return "size = " + size();
     }
+
+    private static final int DEX_HEAP_FACTOR = 20;
 }
@@ -18,6 +18,7 @@ package com.reandroid.dex.model;
 import com.reandroid.archive.ByteInputSource;
 import com.reandroid.archive.InputSource;
 import com.reandroid.archive.ZipEntryMap;
+import com.reandroid.arsc.io.BlockReader;
 import com.reandroid.utils.io.FileUtil;
 
 import java.io.*;
@@ -26,6 +27,12 @@ public interface DexSource<T> extends Comparable<DexSource<?>>, Closeable{
 
     String getName();
     InputStream openStream() throws IOException;
+    default BlockReader openBlockReader() throws IOException {
+        InputStream inputStream = openStream();
+        BlockReader reader = new BlockReader(inputStream);
+        inputStream.close();
+        return reader;
+    }
     void write(byte[] bytes) throws IOException;
     boolean delete();
     T get();
@@ -246,6 +253,17 @@ public interface DexSource<T> extends Comparable<DexSource<?>>, Closeable{
             return inputSource.openStream();
         }
         @Override
+        public BlockReader openBlockReader() throws IOException {
+            if(isClosed()){
+                throw new IOException("Closed: " + getName());
+            }
+            InputSource inputSource = zipEntryMap.getInputSource(getName());
+            if(inputSource == null){
+                throw new IOException("Zip input source not found: " + getName());
+            }
+            return inputSource.openBlockReader();
+        }
+        @Override
         public void write(byte[] bytes) throws IOException {
             if(isClosed()){
                 throw new IOException("Closed: " + getName());
@@ -38,7 +38,7 @@ public class Section<T extends SectionItem>  extends FixedDexContainer
     private final DexPositionAlign sectionAlign;
     private final SectionArray<T> itemArray;
 
-    private DexSectionPool<T> dexSectionPool;
+    private volatile DexSectionPool<T> dexSectionPool;
 
     Section(SectionType<T> sectionType, SectionArray<T> itemArray){
         super(2);
@@ -138,9 +138,15 @@ public class Section<T extends SectionItem>  extends FixedDexContainer
     public DexSectionPool<T> getPool(){
         DexSectionPool<T> dexSectionPool = this.dexSectionPool;
         if(dexSectionPool == null){
-            dexSectionPool = createPool();
-            this.dexSectionPool = dexSectionPool;
-            dexSectionPool.load();
+            // Published after loading, concurrent readers (e.g. parallel smali writers) never see a partial pool
+            synchronized (this){
+                dexSectionPool = this.dexSectionPool;
+                if(dexSectionPool == null){
+                    dexSectionPool = createPool();
+                    dexSectionPool.load();
+                    this.dexSectionPool = dexSectionPool;
+                }
+            }
         }
         return dexSectionPool;
     }
@@ -20,6 +20,7 @@ import com.reandroid.dex.key.MethodKey;
 import com.reandroid.dex.key.TypeKey;
 import com.reandroid.dex.model.DexClassRepository;
 import com.reandroid.dex.smali.formatters.ClassComment;
+import com.reandroid.dex.smali.formatters.HierarchyIndex;
 import com.reandroid.dex.smali.formatters.MethodComment;
 import com.reandroid.dex.smali.formatters.ResourceIdComment;
 import com.reandroid.utils.collection.ArrayCollection;
@@ -110,6 +111,10 @@ public class SmaliWriterSetting {
         addMethodComment(new MethodComment.MethodOverrideComment(classRepository));
         addMethodComment(new MethodComment.MethodImplementComment(classRepository));
     }
+    public void addMethodComments(HierarchyIndex hierarchyIndex) {
+        addMethodComment(new HierarchyIndex.OverrideComment(hierarchyIndex));
+        addMethodComment(new HierarchyIndex.OverridingComment(hierarchyIndex));
+    }
     public void writeClassComment(SmaliWriter writer, TypeKey typeKey) throws IOException {
         List<ClassComment> commentList = getClassCommentList();
         if(commentList != null) {
@@ -145,4 +150,8 @@ public class SmaliWriterSetting {
         addClassComment(new ClassComment.ClassExtendComment(classRepository));
         addClassComment(new ClassComment.ClassImplementComment(classRepository));
     }
+    public void addClassComments(HierarchyIndex hierarchyIndex) {
+        addClassComment(new HierarchyIndex.ExtendingComment(hierarchyIndex));
+        addClassComment(new HierarchyIndex.ImplementationComment(hierarchyIndex));
+    }
 }
@@ -0,0 +1,409 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.dex.smali.formatters;
+
+import com.reandroid.dex.common.DexUtils;
+import com.reandroid.dex.key.MethodKey;
+import com.reandroid.dex.key.TypeKey;
+import com.reandroid.dex.model.DexClass;
+import com.reandroid.dex.model.DexMethod;
+import com.reandroid.dex.smali.SmaliWriter;
+import com.reandroid.utils.ObjectsUtil;
+import com.reandroid.utils.collection.ArrayCollection;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compact copy of the class hierarchy of dex classes: super class, interfaces, flags and
+ * hashes of declared method signatures. Built by one pass over the classes, the comments
+ * of this index write the same as {@link ClassComment} and {@link MethodComment} of a
+ * repository without looking up dex files, e.g. for a lazy DexDirectory that does not fit
+ * its memory budget.
+ * */
+public class HierarchyIndex {
+
+    private final Map<String, Node> nodeMap;
+    private final Map<String, List<Node>> extendingMap;
+    private final Map<String, List<Node>> implementationMap;
+
+    public HierarchyIndex(){
+        this.nodeMap = new HashMap<>();
+        this.extendingMap = new HashMap<>();
+        this.implementationMap = new HashMap<>();
+    }
+
+    public void addAll(Iterator<DexClass> iterator){
+        while (iterator.hasNext()){
+            add(iterator.next());
+        }
+    }
+    public void add(DexClass dexClass){
+        String name = dexClass.getKey().getTypeName();
+        if(nodeMap.containsKey(name)){
+            // Duplicate definition, the first one is found by repository lookups
+            return;
+        }
+        List<Long> methods = new ArrayList<>();
+        List<Long> directMethods = new ArrayList<>();
+        Iterator<DexMethod> iterator = dexClass.getDeclaredMethods();
+        while (iterator.hasNext()){
+            DexMethod dexMethod = iterator.next();
+            long hash = hashSignature(dexMethod.getKey());
+            methods.add(hash);
+            if(dexMethod.isDirect()){
+                directMethods.add(hash);
+            }
+        }
+        TypeKey superKey = dexClass.getSuperClassKey();
+        String superName = superKey != null ? superKey.getTypeName() : null;
+        List<String> interfaceList = new ArrayList<>();
+        Iterator<TypeKey> interfaces = dexClass.getInterfaces();
+        while (interfaces.hasNext()){
+            interfaceList.add(interfaces.next().getTypeName());
+        }
+        Node node = new Node(name, superName,
+                interfaceList.toArray(new String[0]),
+                dexClass.isFinal(), dexClass.isInterface(),
+                toSortedArray(methods), toSortedArray(directMethods));
+        nodeMap.put(name, node);
+        if(superName != null && !DexUtils.isJavaFramework(superName)){
+            putChild(extendingMap, superName, node);
+        }
+        for(String interfaceName : node.interfaces){
+            if(!DexUtils.isJavaFramework(interfaceName)){
+                putChild(implementationMap, interfaceName, node);
+            }
+        }
+    }
+    public int size(){
+        return nodeMap.size();
+    }
+
+    private Node getNode(TypeKey typeKey){
+        if(typeKey == null){
+            return null;
+        }
+        return nodeMap.get(typeKey.getTypeName());
+    }
+    private List<Node> getExtending(Node node){
+        return getChildren(extendingMap, node);
+    }
+    private List<Node> getImplementations(Node node){
+        return getChildren(implementationMap, node);
+    }
+    /**
+     * Super class and interfaces and their super types, depth first, same order as
+     * {@link DexClass#getSuperTypes()}
+     * */
+    private Node findSuperDeclaring(Node node, long method){
+        Set<Node> visited = new HashSet<>();
+        visited.add(node);
+        return findSuperDeclaring(node, method, visited);
+    }
+    private Node findSuperDeclaring(Node node, long method, Set<Node> visited){
+        Node superNode = node.superName != null ? nodeMap.get(node.superName) : null;
+        Node result = findDeclaring(superNode, method, visited);
+        if(result != null){
+            return result;
+        }
+        for(String interfaceName : node.interfaces){
+            result = findDeclaring(nodeMap.get(interfaceName), method, visited);
+            if(result != null){
+                return result;
+            }
+        }
+        return null;
+    }
+    private Node findDeclaring(Node node, long method, Set<Node> visited){
+        if(node == null || !visited.add(node)){
+            return null;
+        }
+        if(node.declares(method)){
+            return node;
+        }
+        return findSuperDeclaring(node, method, visited);
+    }
+    /**
+     * Same order as {@link DexMethod#getOverriding()}, the path guards against cyclic
+     * hierarchy of broken dex files
+     * */
+    private void collectOverriding(Node node, long method, List<Node> results){
+        Set<Node> path = new HashSet<>();
+        path.add(node);
+        for(Node child : getExtending(node)){
+            collectExtending(child, method, results, path);
+        }
+        for(Node child : getImplementations(node)){
+            collectImplementations(child, method, results, path);
+        }
+    }
+    private void collectExtending(Node node, long method, List<Node> results, Set<Node> path){
+        if(!path.add(node)){
+            return;
+        }
+        if(node.declares(method)){
+            results.add(node);
+        }
+        for(Node child : getExtending(node)){
+            collectExtending(child, method, results, path);
+        }
+        path.remove(node);
+    }
+    private void collectImplementations(Node node, long method, List<Node> results, Set<Node> path){
+        if(!path.add(node)){
+            return;
+        }
+        if(node.declares(method)){
+            results.add(node);
+        }
+        for(Node child : getImplementations(node)){
+            collectImplementations(child, method, results, path);
+        }
+        path.remove(node);
+    }
+
+    private static List<Node> getChildren(Map<String, List<Node>> map, Node node){
+        List<Node> results = map.get(node.name);
+        if(results == null){
+            return Collections.emptyList();
+        }
+        return results;
+    }
+    private static void putChild(Map<String, List<Node>> map, String name, Node node){
+        List<Node> children = map.get(name);
+        if(children == null){
+            children = new ArrayCollection<>();
+            map.put(name, children);
+        }
+        children.add(node);
+    }
+    private static long[] toSortedArray(List<Long> list){
+        int size = list.size();
+        long[] results = new long[size];
+        for(int i = 0; i < size; i++){
+            results[i] = list.get(i);
+        }
+        Arrays.sort(results);
+        return results;
+    }
+    /**
+     * 64 bit FNV-1a hash of name, parameters and return type, the declaring class is excluded
+     * */
+    static long hashSignature(MethodKey methodKey){
+        long hash = FNV_OFFSET;
+        hash = hashString(hash, methodKey.getName());
+        hash = hashChar(hash, '(');
+        String[] parameters = methodKey.getParameterNames();
+        if(parameters != null){
+            for(String parameter : parameters){
+                hash = hashString(hash, parameter);
+            }
+        }
+        hash = hashChar(hash, ')');
+        return hashString(hash, methodKey.getReturnTypeName());
+    }
+    private static long hashString(long hash, String text){
+        if(text == null){
+            return hashChar(hash, 0);
+        }
+        int length = text.length();
+        for(int i = 0; i < length; i++){
+            hash = hashChar(hash, text.charAt(i));
+        }
+        return hash;
+    }
+    private static long hashChar(long hash, int c){
+        hash ^= c;
+        return hash * FNV_PRIME;
+    }
+
+    static class Node {
+        final String name;
+        final String superName;
+        final String[] interfaces;
+        final boolean isFinal;
+        final boolean isInterface;
+        private final long[] methods;
+        private final long[] directMethods;
+
+        Node(String name, String superName, String[] interfaces, boolean isFinal,
+             boolean isInterface, long[] methods, long[] directMethods){
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isFinal = isFinal;
+            this.isInterface = isInterface;
+            this.methods = methods;
+            this.directMethods = directMethods;
+        }
+        boolean declares(long method){
+            return Arrays.binarySearch(methods, method) >= 0;
+        }
+        boolean declaresDirect(long method){
+            return Arrays.binarySearch(directMethods, method) >= 0;
+        }
+    }
+
+    public static class ExtendingComment implements ClassComment {
+
+        private final HierarchyIndex index;
+
+        public ExtendingComment(HierarchyIndex index) {
+            this.index = index;
+        }
+        @Override
+        public void writeComment(SmaliWriter writer, TypeKey typeKey) throws IOException {
+            Node node = index.getNode(typeKey);
+            if(node == null || node.isFinal) {
+                return;
+            }
+            for(Node child : index.getExtending(node)) {
+                writer.appendComment("extended-by: ");
+                writer.appendComment(child.name);
+                writer.newLine();
+            }
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ExtendingComment)) {
+                return false;
+            }
+            ExtendingComment that = (ExtendingComment) obj;
+            return index == that.index;
+        }
+        @Override
+        public int hashCode() {
+            return ObjectsUtil.hash(index, getClass());
+        }
+    }
+    public static class ImplementationComment implements ClassComment {
+
+        private final HierarchyIndex index;
+
+        public ImplementationComment(HierarchyIndex index) {
+            this.index = index;
+        }
+        @Override
+        public void writeComment(SmaliWriter writer, TypeKey typeKey) throws IOException {
+            Node node = index.getNode(typeKey);
+            if(node == null || !node.isInterface) {
+                return;
+            }
+            for(Node child : index.getImplementations(node)) {
+                writer.appendComment("implemented-by: ");
+                writer.appendComment(child.name);
+                writer.newLine();
+            }
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ImplementationComment)) {
+                return false;
+            }
+            ImplementationComment that = (ImplementationComment) obj;
+            return index == that.index;
+        }
+        @Override
+        public int hashCode() {
+            return ObjectsUtil.hash(index, getClass());
+        }
+    }
+    public static class OverrideComment implements MethodComment {
+
+        private final HierarchyIndex index;
+
+        public OverrideComment(HierarchyIndex index) {
+            this.index = index;
+        }
+        @Override
+        public void writeComment(SmaliWriter writer, MethodKey methodKey) throws IOException {
+            Node node = index.getNode(methodKey.getDeclaring());
+            long method = hashSignature(methodKey);
+            if(node == null || !node.declares(method) || node.declaresDirect(method)) {
+                return;
+            }
+            Node superNode = index.findSuperDeclaring(node, method);
+            if(superNode != null) {
+                writer.newLine();
+                writer.appendComment("overrides: ");
+                writer.appendComment(superNode.name);
+            }
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OverrideComment)) {
+                return false;
+            }
+            OverrideComment that = (OverrideComment) obj;
+            return index == that.index;
+        }
+        @Override
+        public int hashCode() {
+            return ObjectsUtil.hash(index, getClass());
+        }
+    }
+    public static class OverridingComment implements MethodComment {
+
+        private final HierarchyIndex index;
+
+        public OverridingComment(HierarchyIndex index) {
+            this.index = index;
+        }
+        @Override
+        public void writeComment(SmaliWriter writer, MethodKey methodKey) throws IOException {
+            Node node = index.getNode(methodKey.getDeclaring());
+            long method = hashSignature(methodKey);
+            if(node == null || !node.declares(method) || node.declaresDirect(method) || node.isFinal) {
+                return;
+            }
+            List<Node> results = new ArrayList<>();
+            index.collectOverriding(node, method, results);
+            for(Node implementation : results) {
+                writer.newLine();
+                writer.appendComment("implemented-by: ");
+                writer.appendComment(implementation.name);
+            }
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OverridingComment)) {
+                return false;
+            }
+            OverridingComment that = (OverridingComment) obj;
+            return index == that.index;
+        }
+        @Override
+        public int hashCode() {
+            return ObjectsUtil.hash(index, getClass());
+        }
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
@@ -51,6 +51,21 @@ public class Baksmali {
 
     public static boolean disassembleDexFile(DexFile dexFile, File outputDir, int jobs, final BaksmaliOptions options,
                                               List<String> classes) {
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            return awaitAll(submitDexFile(dexFile, outputDir, executor, options, classes));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Submits disassembly of each class to the executor without waiting, so classes of several dex files can
+     * share one executor. File names are assigned on the calling thread in sorted class order, so output names
+     * do not depend on the order tasks complete.
+     */
+    public static List<Future<Boolean>> submitDexFile(DexFile dexFile, File outputDir, ExecutorService executor,
+                                                      final BaksmaliOptions options, List<String> classes) {
 
         //sort the classes, so that if we're on a case-insensitive file system and need to handle classes with file
         //name collisions, then we'll use the same name for each class, if the dex file goes through multiple
@@ -68,7 +83,6 @@ public class Baksmali {
 
         final ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(outputDir, ".smali");
 
-        ExecutorService executor = Executors.newFixedThreadPool(jobs);
         List<Future<Boolean>> tasks = new ArrayList<>();
 
         Set<String> classSet = null;
@@ -80,37 +94,39 @@ public class Baksmali {
             if (classSet != null && !classSet.contains(classDef.getType())) {
                 continue;
             }
+            final File smaliFile = getSmaliFile(classDef, fileNameHandler);
             tasks.add(executor.submit(new Callable<Boolean>() {
                 @Override public Boolean call() throws Exception {
-                    return disassembleClass(classDef, fileNameHandler, options);
+                    return smaliFile != null && disassembleClass(classDef, smaliFile, options);
                 }
             }));
         }
+        return tasks;
+    }
 
+    /**
+     * Waits for tasks returned by {@link #submitDexFile}, returns false if any class failed.
+     */
+    public static boolean awaitAll(List<Future<Boolean>> tasks) {
         boolean errorOccurred = false;
-        try {
-            for (Future<Boolean> task: tasks) {
-                while(true) {
-                    try {
-                        if (!task.get()) {
-                            errorOccurred = true;
-                        }
-                    } catch (InterruptedException ex) {
-                        continue;
-                    } catch (ExecutionException ex) {
-                        throw new RuntimeException(ex);
+        for (Future<Boolean> task: tasks) {
+            while(true) {
+                try {
+                    if (!task.get()) {
+                        errorOccurred = true;
                     }
-                    break;
+                } catch (InterruptedException ex) {
+                    continue;
+                } catch (ExecutionException ex) {
+                    throw new RuntimeException(ex);
                 }
+                break;
             }
-        } finally {
-            executor.shutdown();
         }
         return !errorOccurred;
     }
 
-    private static boolean disassembleClass(ClassDef classDef, ClassFileNameHandler fileNameHandler,
-                                            BaksmaliOptions options) {
+    private static File getSmaliFile(ClassDef classDef, ClassFileNameHandler fileNameHandler) {
         /**
          * The path for the disassembly file is based on the package name
          * The class descriptor will look something like:
@@ -124,17 +140,20 @@ public class Baksmali {
         if (classDescriptor.charAt(0) != 'L' ||
                 classDescriptor.charAt(classDescriptor.length()-1) != ';') {
             System.err.println("Unrecognized class descriptor - " + classDescriptor + " - skipping class");
-            return false;
+            return null;
         }
 
-        File smaliFile = null;
         try {
-            smaliFile = fileNameHandler.getUniqueFilenameForClass(classDescriptor);
+            return fileNameHandler.getUniqueFilenameForClass(classDescriptor);
         } catch (IOException ex) {
             System.err.println("\n\nError occurred while creating file for class " + classDescriptor);
             ex.printStackTrace();
-            return false;
+            return null;
         }
+    }
+
+    private static boolean disassembleClass(ClassDef classDef, File smaliFile, BaksmaliOptions options) {
+        String classDescriptor = classDef.getType();
 
         //create and initialize the top level string template
         ClassDefinition classDefinition = new ClassDefinition(options, classDef);
@@ -85,7 +85,11 @@ public class ClassFileNameHandler {
         return MAX_FILENAME_LENGTH - NUMERIC_SUFFIX_RESERVE;
     }
 
-    public File getUniqueFilenameForClass(String className) throws IOException {
+    /**
+     * Synchronized so one handler can be shared by concurrent jobs, callers still need to request names in a
+     * fixed order for colliding names to get the same suffixes on every run.
+     */
+    public synchronized File getUniqueFilenameForClass(String className) throws IOException {
         //class names should be passed in the normal dalvik style, with a leading L, a trailing ;, and using
         //'/' as a separator.
         if (className.charAt(0) != 'L' || className.charAt(className.length()-1) != ';') {
@@ -0,0 +1,140 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apk;
+
+import com.reandroid.arsc.chunk.TableBlock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class MergeCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File splitsDir;
+    private File cacheDir;
+    private final List<String> messages = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        splitsDir = temporaryFolder.newFolder("splits");
+        cacheDir = temporaryFolder.newFolder("cache");
+        TestSplits.copyTo(splitsDir);
+    }
+
+    @Test
+    public void unchangedInputHitsCache() throws IOException {
+        MergeCache first = new MergeCache(cacheDir);
+        mergeWithCache(first);
+        Assert.assertFalse(first.isUnchanged());
+        Assert.assertTrue(first.getTableFile().isFile());
+
+        MergeCache second = new MergeCache(cacheDir);
+        Map<String, String> actual = mergeWithCache(second);
+        Assert.assertTrue(second.isUnchanged());
+        Assert.assertTrue(messages.contains("Modules unchanged, using cached table"));
+        Assert.assertEquals(TestSplits.mergeAndResolve(splitsDir, false), actual);
+    }
+    @Test
+    public void changedInputMissesCache() throws IOException {
+        mergeWithCache(new MergeCache(cacheDir));
+
+        // Same module name, different content
+        Files.copy(new File(splitsDir, "split_config.ja.apk").toPath(),
+                new File(splitsDir, "split_config.fr.apk").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        MergeCache second = new MergeCache(cacheDir);
+        Map<String, String> actual = mergeWithCache(second);
+        Assert.assertFalse(second.isUnchanged());
+        Assert.assertEquals(TestSplits.mergeAndResolve(splitsDir, false), actual);
+    }
+    @Test
+    public void partialMergeIsNotStored() throws IOException {
+        MergeCache first = new MergeCache(cacheDir);
+        mergeWithCache(first);
+        File tableFile = first.getTableFile();
+        byte[] cachedTable = Files.readAllBytes(tableFile.toPath());
+        List<File> cachedFiles = listCacheFiles();
+        List<byte[]> cachedContents = readAll(cachedFiles);
+
+        // Types of fr are not shared with other splits, so only the table is re-merged
+        Assert.assertTrue(new File(splitsDir, "split_config.fr.apk").delete());
+        messages.clear();
+        Map<String, String> actual = mergeWithCache(new MergeCache(cacheDir));
+        Assert.assertTrue(messages.contains("Re-merging changed splits: 0"));
+        Assert.assertEquals(TestSplits.mergeAndResolve(splitsDir, false), actual);
+
+        Assert.assertArrayEquals(cachedTable, Files.readAllBytes(tableFile.toPath()));
+        Assert.assertEquals(cachedFiles, listCacheFiles());
+        List<byte[]> contents = readAll(cachedFiles);
+        for(int i = 0; i < contents.size(); i++){
+            Assert.assertArrayEquals(cachedFiles.get(i).getName(),
+                    cachedContents.get(i), contents.get(i));
+        }
+    }
+
+    private Map<String, String> mergeWithCache(MergeCache mergeCache) throws IOException {
+        try(ApkBundle bundle = new ApkBundle()){
+            bundle.setAPKLogger(new APKLogger() {
+                @Override
+                public void logMessage(String msg) {
+                    messages.add(msg);
+                }
+                @Override
+                public void logError(String msg, Throwable tr) {
+                }
+                @Override
+                public void logVerbose(String msg) {
+                }
+            });
+            bundle.loadApkDirectory(splitsDir);
+            bundle.setMergeCache(mergeCache);
+            try(ApkModule merged = bundle.mergeModules()){
+                TableBlock tableBlock = merged.hasTableBlock() ? merged.getTableBlock() : null;
+                return TestSplits.resolveEntries(tableBlock);
+            }
+        }
+    }
+    private List<File> listCacheFiles(){
+        List<File> results = new ArrayList<>();
+        File[] files = cacheDir.listFiles();
+        if(files != null){
+            for(File file : files){
+                results.add(file);
+            }
+        }
+        results.sort(null);
+        return results;
+    }
+    private static List<byte[]> readAll(List<File> files) throws IOException {
+        List<byte[]> results = new ArrayList<>();
+        for(File file : files){
+            results.add(Files.readAllBytes(file.toPath()));
+        }
+        return results;
+    }
+}
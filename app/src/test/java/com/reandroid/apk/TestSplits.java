@@ -0,0 +1,98 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apk;
+
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.chunk.TypeBlock;
+import com.reandroid.arsc.container.SpecTypePair;
+import com.reandroid.arsc.value.Entry;
+import com.reandroid.utils.HexUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Split fixtures of src/test/resources/splits: a base with strings, plurals, styles, arrays,
+ * dimens, colors, drawables and empty entries, three locale splits (fr with a UTF-16 pool,
+ * de with values for empty entries of the base) and two density splits.
+ * */
+class TestSplits {
+
+    static final String[] NAMES = new String[]{
+            "base.apk",
+            "split_config.de.apk",
+            "split_config.fr.apk",
+            "split_config.ja.apk",
+            "split_config.hdpi.apk",
+            "split_config.xxhdpi.apk"
+    };
+
+    private TestSplits(){
+    }
+
+    static void copyTo(File dir) throws IOException {
+        for(String name : NAMES){
+            try(InputStream inputStream = TestSplits.class.getResourceAsStream("/splits/" + name)){
+                if(inputStream == null){
+                    throw new IOException("Missing fixture: " + name);
+                }
+                Files.copy(inputStream, new File(dir, name).toPath());
+            }
+        }
+    }
+    /**
+     * @return values of non-null entries as json, keyed by "package id type-config/name".
+     * Strings are resolved from pools, so differences of pool order or chunk layout are ignored
+     * */
+    static Map<String, String> resolveEntries(TableBlock tableBlock){
+        Map<String, String> results = new TreeMap<>();
+        if(tableBlock == null){
+            return results;
+        }
+        for(PackageBlock packageBlock : tableBlock.listPackages()){
+            for(SpecTypePair specTypePair : packageBlock.listSpecTypePairs()){
+                for(TypeBlock typeBlock : specTypePair){
+                    String type = typeBlock.getTypeName() + typeBlock.getQualifiers();
+                    for(Entry entry : typeBlock){
+                        if(entry == null || entry.isNull()){
+                            continue;
+                        }
+                        String key = packageBlock.getName() + " "
+                                + HexUtil.toHex8(entry.getResourceId()) + " "
+                                + type + "/" + entry.getName();
+                        results.put(key, entry.toJson().toString());
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    static Map<String, String> mergeAndResolve(File dir, boolean streamTableMerge) throws IOException {
+        try(ApkBundle bundle = new ApkBundle()){
+            bundle.loadApkDirectory(dir);
+            bundle.setStreamTableMerge(streamTableMerge);
+            try(ApkModule merged = bundle.mergeModules()){
+                // Resolved before close, a streamed table is a temporary file owned by the module
+                return resolveEntries(merged.hasTableBlock() ? merged.getTableBlock() : null);
+            }
+        }
+    }
+}
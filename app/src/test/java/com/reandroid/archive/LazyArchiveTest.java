@@ -0,0 +1,92 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.archive;
+
+import com.reandroid.archive.io.ArchiveEntrySource;
+import com.reandroid.utils.io.IOUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+public class LazyArchiveTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void lazyEntriesEqualEagerEntries() throws IOException {
+        File file = copyFixture();
+        try(ArchiveFile eager = new ArchiveFile(file); ArchiveFile lazy = new ArchiveFile(file, true)){
+            InputSource[] expected = eager.getInputSources();
+            InputSource[] actual = lazy.getInputSources();
+            Assert.assertTrue(expected.length > 0);
+            Assert.assertEquals(expected.length, actual.length);
+            for(int i = 0; i < expected.length; i++){
+                ArchiveEntry eagerEntry = ((ArchiveEntrySource<?>) expected[i]).getArchiveEntry();
+                ArchiveEntry lazyEntry = ((ArchiveEntrySource<?>) actual[i]).getArchiveEntry();
+                String name = eagerEntry.getName();
+                Assert.assertEquals(name, lazyEntry.getName());
+                Assert.assertFalse(name, lazyEntry.isLocalFileHeaderResolved());
+                Assert.assertEquals(name, eagerEntry.getMethod(), lazyEntry.getMethod());
+                Assert.assertEquals(name, eagerEntry.getCrc(), lazyEntry.getCrc());
+                Assert.assertEquals(name, eagerEntry.getDataSize(), lazyEntry.getDataSize());
+                Assert.assertEquals(name, eagerEntry.getFileOffset(), lazyEntry.getFileOffset());
+                Assert.assertTrue(name, lazyEntry.isLocalFileHeaderResolved());
+                Assert.assertArrayEquals(name, readAll(expected[i]), readAll(actual[i]));
+            }
+        }
+    }
+    @Test
+    public void brokenLocalHeaderThrowsIOException() throws IOException {
+        File file = copyFixture();
+        long offset;
+        try(ArchiveFile archive = new ArchiveFile(file)){
+            offset = archive.getFiles().next().getCentralEntryHeader().getLocalRelativeOffset();
+        }
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")){
+            randomAccessFile.seek(offset);
+            randomAccessFile.write(new byte[4]);
+        }
+        try(ArchiveFile archive = new ArchiveFile(file, true)){
+            ArchiveEntry entry = archive.getFiles().next();
+            try {
+                entry.getFileOffset();
+                Assert.fail("Expected IOException for " + entry.getName());
+            } catch (IOException ignored) {
+            }
+            Assert.assertFalse(entry.isLocalFileHeaderResolved());
+        }
+    }
+
+    private File copyFixture() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "base.apk");
+        try(InputStream inputStream = LazyArchiveTest.class.getResourceAsStream("/splits/base.apk")){
+            Assert.assertNotNull(inputStream);
+            Files.copy(inputStream, file.toPath());
+        }
+        return file;
+    }
+    private static byte[] readAll(InputSource inputSource) throws IOException {
+        return IOUtil.readFully(inputSource.openStream());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.dex.model;
+
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.ZipEntryMap;
+import com.reandroid.dex.common.AccessFlag;
+import com.reandroid.dex.key.MethodKey;
+import com.reandroid.dex.key.TypeKey;
+import com.reandroid.dex.smali.SmaliWriter;
+import com.reandroid.dex.smali.SmaliWriterSetting;
+import com.reandroid.dex.smali.formatters.HierarchyIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LazyDexDirectoryTest {
+
+    @Test
+    public void evictedChangesAreKept() throws IOException {
+        DexDirectory directory = loadDirectory(true);
+        DexFileSourceSet sourceSet = directory.getDexSourceSet();
+
+        DexFile first = sourceSet.getDexFile(0);
+        first.getDexClass(TypeKey.create("Lp/A;"))
+                .setSuperClass(TypeKey.create("Lp/Changed;"));
+        for(int i = 1; i < sourceSet.size(); i++){
+            sourceSet.getDexFile(i);
+        }
+        Assert.assertNull("Expected evicted", sourceSet.getSource(0).get());
+
+        DexClass dexClass = sourceSet.getDexFile(0).getDexClass(TypeKey.create("Lp/A;"));
+        Assert.assertEquals("Lp/Changed;", dexClass.getSuperClassKey().getTypeName());
+    }
+    @Test
+    public void smaliDirectoryNameOfEvictedFile() throws IOException {
+        DexDirectory directory = loadDirectory(true);
+        DexFileSourceSet sourceSet = directory.getDexSourceSet();
+
+        DexFile second = sourceSet.getDexFile(1);
+        sourceSet.getDexFile(0);
+        sourceSet.getDexFile(2);
+        Assert.assertNull("Expected evicted", sourceSet.getSource(1).get());
+        Assert.assertEquals(1, sourceSet.indexOf(second));
+        Assert.assertEquals("classes2", second.buildSmaliDirectoryName());
+    }
+    @Test
+    public void hierarchyCommentsEqualRepositoryComments() throws IOException {
+        DexDirectory eager = loadDirectory(false);
+        SmaliWriterSetting expectedSetting = new SmaliWriterSetting();
+        expectedSetting.addClassComments(eager);
+        expectedSetting.addMethodComments(eager);
+        Map<String, String> expected = writeSmali(eager, expectedSetting);
+
+        DexDirectory lazy = loadDirectory(true);
+        lazy.getDexSourceSet().setReadOnly(true);
+        HierarchyIndex hierarchyIndex = new HierarchyIndex();
+        hierarchyIndex.addAll(lazy.getDexClasses());
+        SmaliWriterSetting actualSetting = new SmaliWriterSetting();
+        actualSetting.addClassComments(hierarchyIndex);
+        actualSetting.addMethodComments(hierarchyIndex);
+        Map<String, String> actual = writeSmali(lazy, actualSetting);
+
+        Assert.assertEquals(6, expected.size());
+        Assert.assertEquals(expected, actual);
+        String smali = expected.get("Lp/I;");
+        Assert.assertTrue(smali, smali.contains("implemented-by:  Lp/J;"));
+        smali = expected.get("Lp/B;");
+        Assert.assertTrue(smali, smali.contains("overrides:  Lp/A;"));
+        Assert.assertTrue(smali, smali.contains("extended-by:  Lp/C;"));
+    }
+
+    private static Map<String, String> writeSmali(DexDirectory directory, SmaliWriterSetting setting) throws IOException {
+        Map<String, String> results = new LinkedHashMap<>();
+        Iterator<DexClass> iterator = directory.getDexClasses();
+        while (iterator.hasNext()){
+            DexClass dexClass = iterator.next();
+            SmaliWriter writer = new SmaliWriter();
+            writer.setWriterSetting(setting);
+            results.put(dexClass.getKey().getTypeName(), SmaliWriter.toString(writer, dexClass));
+        }
+        return results;
+    }
+    /**
+     * Three dex files, hierarchy of each file depends on classes of the others:
+     * I <- J (interfaces), A implements I, B extends A, final C extends B implements J,
+     * D extends A
+     * */
+    private static DexDirectory loadDirectory(boolean lazy) throws IOException {
+        DexFile dex1 = DexFile.createDefault();
+        DexClass dexClass = createClass(dex1, "Lp/I;", TypeKey.OBJECT, AccessFlag.INTERFACE, AccessFlag.ABSTRACT);
+        addVirtual(dexClass, "m", "V");
+        dexClass = createClass(dex1, "Lp/A;", TypeKey.OBJECT);
+        dexClass.addInterface("Lp/I;");
+        addVirtual(dexClass, "m", "V");
+        addVirtual(dexClass, "n", "I", "I");
+        dexClass.getOrCreateDirectMethod(new MethodKey("Lp/A;", "p", new String[0], "V"))
+                .addAccessFlag(AccessFlag.PRIVATE);
+
+        DexFile dex2 = DexFile.createDefault();
+        dexClass = createClass(dex2, "Lp/B;", TypeKey.create("Lp/A;"));
+        addVirtual(dexClass, "m", "V");
+        dexClass = createClass(dex2, "Lp/J;", TypeKey.OBJECT, AccessFlag.INTERFACE, AccessFlag.ABSTRACT);
+        dexClass.addInterface("Lp/I;");
+        addVirtual(dexClass, "m", "V");
+
+        DexFile dex3 = DexFile.createDefault();
+        dexClass = createClass(dex3, "Lp/C;", TypeKey.create("Lp/B;"), AccessFlag.FINAL);
+        dexClass.addInterface("Lp/J;");
+        addVirtual(dexClass, "n", "I", "I");
+        createClass(dex3, "Lp/D;", TypeKey.create("Lp/A;"));
+
+        ZipEntryMap zipEntryMap = new ZipEntryMap();
+        DexFile[] dexFiles = new DexFile[]{dex1, dex2, dex3};
+        for(int i = 0; i < dexFiles.length; i++){
+            DexFile dexFile = dexFiles[i];
+            dexFile.refresh();
+            String name = i == 0 ? "classes.dex" : "classes" + (i + 1) + ".dex";
+            zipEntryMap.add(new ByteInputSource(dexFile.getBytes(), name));
+        }
+        DexDirectory directory = new DexDirectory();
+        if(lazy){
+            // Less than one dex file, only the last accessed file is kept
+            directory.getDexSourceSet().setMemoryBudget(1);
+        }
+        directory.addApk(zipEntryMap);
+        return directory;
+    }
+    private static DexClass createClass(DexFile dexFile, String name, TypeKey superClass, AccessFlag ... flags){
+        DexClass dexClass = dexFile.getOrCreateClass(name);
+        dexClass.addAccessFlag(AccessFlag.PUBLIC);
+        for(AccessFlag flag : flags){
+            dexClass.addAccessFlag(flag);
+        }
+        dexClass.setSuperClass(superClass);
+        return dexClass;
+    }
+    private static void addVirtual(DexClass dexClass, String name, String returnType, String ... parameters){
+        MethodKey methodKey = new MethodKey(dexClass.getKey().getTypeName(), name, parameters, returnType);
+        DexMethod dexMethod = dexClass.getOrCreateVirtualMethod(methodKey);
+        dexMethod.addAccessFlag(AccessFlag.PUBLIC);
+        dexMethod.addAccessFlag(AccessFlag.ABSTRACT);
+    }
+}